@@ -0,0 +1,59 @@
+package ai;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the win check HardBot runs on every node of its tree. The tree's old
+ * detectPlayerWin scan of the int[][] was replaced by BitBoard.lastMoveWon,
+ * which is what is measured here, along with the play and undo around it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitBoardBenchmark {
+
+	@Param({ Positions.OPENING, Positions.MIDDLE, Positions.ENDGAME })
+	public String position;
+
+	private final BitBoard board = new BitBoard();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		board.set(Positions.grid(position), Positions.player(position));
+	}
+
+	@Benchmark
+	public boolean lastMoveWon() {
+		return board.lastMoveWon();
+	}
+
+	@Benchmark
+	public int playWinCheckUndo() {
+		int wins = 0;
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(board.canPlay(col)) {
+				board.play(col);
+				if(board.lastMoveWon())
+					wins++;
+				board.undo();
+			}
+		}
+		return wins;
+	}
+}
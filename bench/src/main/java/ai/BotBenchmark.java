@@ -0,0 +1,67 @@
+package ai;
+
+import engine.Move;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times one move of HardBot and EasyBot on each position of the fixed corpus.
+ * HardBot is timed in both of its modes, building the game tree and scoring
+ * depth-first. A new bot is made for every move, so HardBot's tree mode has
+ * no tree to reuse and does all of its work each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BotBenchmark {
+
+	@Param({ Positions.OPENING, Positions.EARLY, Positions.MIDDLE, Positions.MIDDLE_LATE, Positions.LATE,
+			Positions.ENDGAME })
+	public String position;
+
+	private int[][] grid;
+	private int player;
+	private Move lastMove;
+
+	/**
+	 * HardBot's mode, kept out of the benchmark's own state so only the
+	 * HardBot benchmark runs once for each mode
+	 */
+	@State(Scope.Thread)
+	public static class HardBotMode {
+		@Param({ "true", "false" })
+		public boolean depthFirst;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		grid = Positions.grid(position);
+		player = Positions.player(position);
+		lastMove = Positions.lastMove(position);
+	}
+
+	@Benchmark
+	public int hardBotMove(HardBotMode mode) {
+		return new HardBot(player, mode.depthFirst).move(grid, lastMove);
+	}
+
+	@Benchmark
+	public int easyBotMove() {
+		return new EasyBot(player).move(grid, lastMove);
+	}
+}
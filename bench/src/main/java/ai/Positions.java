@@ -0,0 +1,50 @@
+package ai;
+
+import engine.Move;
+
+/**
+ * The fixed positions the bot benchmarks run on, so results can be compared
+ * between runs. Each position is the columns played from the start of the
+ * game, none of them over and none with a win in one for the player to move.
+ */
+public final class Positions {
+
+	public static final String OPENING = "1563";
+	public static final String EARLY = "54136334";
+	public static final String MIDDLE = "001305025112";
+	public static final String MIDDLE_LATE = "0013054212646531";
+	public static final String LATE = "51246003616356443625";
+	public static final String ENDGAME = "410410013533560056351044";
+
+	private Positions() {
+	}
+
+	/**
+	 * Returns the board after the moves, with row 0 at the top as the game engine keeps it
+	 */
+	public static int[][] grid(String moves) {
+		int[][] grid = new int[BitBoard.ROWS][BitBoard.COLS];
+		BitBoard board = new BitBoard();
+
+		for(int i = 0; i < moves.length(); i++) {
+			int col = moves.charAt(i) - '0';
+			grid[BitBoard.ROWS - 1 - board.getHeight(col)][col] = board.getPlayer();
+			board.play(col);
+		}
+		return grid;
+	}
+
+	/**
+	 * Returns the player to move after the moves, 1 or 2
+	 */
+	public static int player(String moves) {
+		return moves.length() % 2 + 1;
+	}
+
+	/**
+	 * Returns the last of the moves
+	 */
+	public static Move lastMove(String moves) {
+		return new Move(moves.charAt(moves.length() - 1) - '0');
+	}
+}
@@ -0,0 +1,73 @@
+package engine;
+
+import ai.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the engine work done for every disc in a game: GameEngine.putDisc
+ * followed by isGameOver, and GameBoard.putDisc with getColumnHeight. Each
+ * operation plays one whole fixed game from an empty board, 37 discs ending
+ * in a win, so divide by 37 for the cost of a single disc. Clearing the board
+ * between games is part of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameEngineBenchmark {
+
+	// a random game that player 1 wins with the 37th disc
+	private static final String GAME = "4225246130506503260001454112115256464";
+
+	private final Move[] moves = new Move[GAME.length()];
+	private GameEngine engine;
+	private GameBoard board;
+
+	@Setup
+	public void setUp() {
+		for (int i = 0; i < moves.length; i++) {
+			moves[i] = new Move(GAME.charAt(i) - '0');
+		}
+		engine = new GameEngine(new Player(1), new Player(2));
+		board = engine.getBoard();
+	}
+
+	@Benchmark
+	public Player enginePutDiscAndIsGameOver() throws OutsideBoardException {
+		engine.clearBoard();
+		engine.p1Turn();
+
+		Player winner = null;
+		for (int i = 0; i < moves.length && winner == null; i++) {
+			engine.putDisc(moves[i]);
+			winner = engine.isGameOver();
+		}
+		return winner;
+	}
+
+	@Benchmark
+	public int boardPutDiscAndColumnHeight() throws OutsideBoardException {
+		board.clearBoard();
+
+		int heights = 0;
+		for (int i = 0; i < moves.length; i++) {
+			int column = moves[i].getPosition();
+			board.putDisc(i % 2 + 1, column);
+			heights += board.getColumnHeight(column);
+		}
+		return heights;
+	}
+}
@@ -1,5 +1,6 @@
 package ai;
 
+import engine.BoardSnapshot;
 import engine.Move;
 
 public interface AI {
@@ -11,4 +12,33 @@ public interface AI {
 	 * @return random column in the board
 	 */
 	public abstract int move(int[][] board, Move lastMove);
+
+	/**
+	 * Same as move with an array, but takes the engine's snapshot of the board.
+	 * Bots that search on a BitBoard read the snapshot straight in, the others
+	 * get it as an array
+	 *
+	 * @param board the current state of the game
+	 * @param lastMove the last move that that has been played in the game, null if its the start
+	 * @return the column to play
+	 */
+	public default int move(BoardSnapshot board, Move lastMove) {
+		return move(board.toArray(), lastMove);
+	}
+
+	/**
+	 * Called from another thread to make a move that is being worked out return
+	 * as soon as it can, with the best column found so far. The stop lasts until
+	 * resetStop, so a move that starts after it returns straight away too. Bots
+	 * that always move quickly do not need to do anything
+	 */
+	public default void stop() {
+	}
+
+	/**
+	 * Clears a stop, called before the bot is asked for a move by whoever stops
+	 * it. Bots that are never stopped do not need it to be called
+	 */
+	public default void resetStop() {
+	}
 }
@@ -0,0 +1,352 @@
+package ai;
+
+import engine.BoardSnapshot;
+
+/**
+ * Compact board representation used by the bots when searching.
+ *
+ * Each player's discs are held in one 64 bit long. Every column takes up
+ * ROWS + 1 bits (the extra bit is a sentinel that keeps shifts from wrapping
+ * into the next column) and bit 0 of a column is the bottom row:
+ *
+ *  6 13 20 27 34 41 48
+ *  5 12 19 26 33 40 47
+ *  4 11 18 25 32 39 46
+ *  3 10 17 24 31 38 45
+ *  2  9 16 23 30 37 44
+ *  1  8 15 22 29 36 43
+ *  0  7 14 21 28 35 42
+ *
+ * Playing and undoing a move are O(1) and never allocate.
+ */
+public class BitBoard {
+
+	public static final int ROWS = 6, COLS = 7; //Dimensions
+	public static final int SIZE = ROWS * COLS;
+
+	static final int H1 = ROWS + 1; //Bits per column, including the sentinel
+
+	static final long BOTTOM = bottomMask(); //Bottom cell of every column
+	static final long BOARD = BOTTOM * ((1L << ROWS) - 1); //Every playable cell
+
+	private final long[] discs = new long[2]; //Index 0 is player 1, index 1 is player 2
+	private final int[] height = new int[COLS]; //Bit index of the next free cell in each column
+	private final int[] history = new int[SIZE]; //Columns played, used to undo moves
+	private int moves = 0; //Number of discs on the board
+	private int turn = 0; //Index of the player to move
+
+	/**
+	 * Creates an empty board with player 1 to move
+	 */
+	public BitBoard() {
+		clear(1);
+	}
+
+	/**
+	 * Creates a board from the game's array representation
+	 *
+	 * @param board the board with row 0 at the top, as the game engine stores it
+	 * @param player the player who moves next
+	 */
+	public BitBoard(int[][] board, int player) {
+		set(board, player);
+	}
+
+	/**
+	 * Creates a board from a snapshot of the game
+	 *
+	 * @param board the snapshot, which packs the discs the same way
+	 * @param player the player who moves next
+	 */
+	public BitBoard(BoardSnapshot board, int player) {
+		set(board, player);
+	}
+
+	/**
+	 * Empties the board
+	 *
+	 * @param player the player who moves first
+	 */
+	public void clear(int player) {
+		discs[0] = 0;
+		discs[1] = 0;
+		for(int col = 0; col < COLS; col++)
+			height[col] = col * H1;
+		moves = 0;
+		turn = player - 1;
+	}
+
+	/**
+	 * Loads the game's array representation into this board
+	 *
+	 * @param board the board with row 0 at the top, as the game engine stores it
+	 * @param player the player who moves next
+	 */
+	public void set(int[][] board, int player) {
+		clear(player);
+
+		for(int col = 0; col < COLS; col++) {
+			for(int row = ROWS - 1; row >= 0 && board[row][col] != 0; row--) {
+				//Winning discs are stored as 3 and 4 by the game board
+				discs[(board[row][col] - 1) % 2] |= 1L << height[col]++;
+				moves++;
+			}
+		}
+	}
+
+	/**
+	 * Loads a snapshot of the game into this board. The discs are copied as they
+	 * are, only the column heights have to be counted
+	 *
+	 * @param board the snapshot
+	 * @param player the player who moves next
+	 */
+	public void set(BoardSnapshot board, int player) {
+		clear(player);
+
+		discs[0] = board.getDiscs(1);
+		discs[1] = board.getDiscs(2);
+		for(int col = 0; col < COLS; col++)
+			height[col] += board.getColumnHeight(col);
+		moves = board.getMoves();
+	}
+
+	/**
+	 * Copies another board into this one
+	 *
+	 * @param other the board to copy
+	 */
+	public void copyFrom(BitBoard other) {
+		discs[0] = other.discs[0];
+		discs[1] = other.discs[1];
+		System.arraycopy(other.height, 0, height, 0, COLS);
+		System.arraycopy(other.history, 0, history, 0, other.moves);
+		moves = other.moves;
+		turn = other.turn;
+	}
+
+	/**
+	 * Returns true if the column still has room for a disc
+	 */
+	public boolean canPlay(int col) {
+		return height[col] < col * H1 + ROWS;
+	}
+
+	/**
+	 * Drops the current player's disc into the column and passes the turn
+	 */
+	public void play(int col) {
+		discs[turn] |= 1L << height[col]++;
+		history[moves++] = col;
+		turn ^= 1;
+	}
+
+	/**
+	 * Takes back the last move played
+	 */
+	public void undo() {
+		int col = history[--moves];
+		turn ^= 1;
+		discs[turn] ^= 1L << --height[col];
+	}
+
+	/**
+	 * Returns a mask with one bit set on the next free cell of every column
+	 * that is not full
+	 */
+	public long legalMoves() {
+		return (mask() + BOTTOM) & BOARD;
+	}
+
+	/**
+	 * Returns true if the player who just moved has four in a row
+	 */
+	public boolean lastMoveWon() {
+		return isWin(discs[turn ^ 1]);
+	}
+
+	/**
+	 * Returns true if the player has four in a row anywhere on the board
+	 */
+	public boolean hasWon(int player) {
+		return isWin(discs[player - 1]);
+	}
+
+	/**
+	 * Returns true if the player to move wins by playing the column
+	 */
+	public boolean isWinningMove(int col) {
+		return isWin(discs[turn] | (1L << height[col]));
+	}
+
+	/**
+	 * Returns true if the player to move can win with their next disc
+	 */
+	public boolean canWinNext() {
+		return (winningCells() & legalMoves()) != 0;
+	}
+
+	/**
+	 * Returns the legal moves, as a mask like legalMoves, that do not lose on
+	 * the spot. That rules out playing under a cell the opponent wins on, and if
+	 * the opponent can win next turn only the block is left. Returns 0 if every
+	 * move loses. Only meaningful if the player to move cannot win next turn
+	 */
+	public long nonLosingMoves() {
+		long possible = legalMoves();
+		long opponentWins = opponentWinningCells();
+		long forced = possible & opponentWins;
+
+		if(forced != 0) {
+			//Two threats at once cannot both be blocked
+			if((forced & (forced - 1)) != 0)
+				return 0;
+			possible = forced;
+		}
+
+		return possible & ~(opponentWins >>> 1);
+	}
+
+	/**
+	 * Returns the empty cells that would give the player to move four in a row
+	 */
+	public long winningCells() {
+		return winningCells(discs[turn], mask());
+	}
+
+	/**
+	 * Returns the empty cells that would give the player who just moved four in a row
+	 */
+	public long opponentWinningCells() {
+		return winningCells(discs[turn ^ 1], mask());
+	}
+
+	/*
+	 * Returns every empty cell, playable or not, that completes four in a row
+	 * for the discs. Each direction looks for three discs on either side of a cell
+	 */
+	static long winningCells(long pos, long mask) {
+		//Vertical, only three below can be completed
+		long r = (pos << 1) & (pos << 2) & (pos << 3);
+
+		//Horizontal
+		long p = (pos << H1) & (pos << 2 * H1);
+		r |= p & (pos << 3 * H1);
+		r |= p & (pos >> H1);
+		p = (pos >> H1) & (pos >> 2 * H1);
+		r |= p & (pos << H1);
+		r |= p & (pos >> 3 * H1);
+
+		//Diagonal going down to the right
+		p = (pos << (H1 - 1)) & (pos << 2 * (H1 - 1));
+		r |= p & (pos << 3 * (H1 - 1));
+		r |= p & (pos >> (H1 - 1));
+		p = (pos >> (H1 - 1)) & (pos >> 2 * (H1 - 1));
+		r |= p & (pos << (H1 - 1));
+		r |= p & (pos >> 3 * (H1 - 1));
+
+		//Diagonal going up to the right
+		p = (pos << (H1 + 1)) & (pos << 2 * (H1 + 1));
+		r |= p & (pos << 3 * (H1 + 1));
+		r |= p & (pos >> (H1 + 1));
+		p = (pos >> (H1 + 1)) & (pos >> 2 * (H1 + 1));
+		r |= p & (pos << (H1 + 1));
+		r |= p & (pos >> 3 * (H1 + 1));
+
+		return r & (BOARD ^ mask);
+	}
+
+	/*
+	 * Returns true if the discs contain four in a row in any direction
+	 */
+	static boolean isWin(long pos) {
+		//Vertical
+		long m = pos & (pos >> 1);
+		if((m & (m >> 2)) != 0) return true;
+
+		//Horizontal
+		m = pos & (pos >> H1);
+		if((m & (m >> 2 * H1)) != 0) return true;
+
+		//Diagonal going down to the right
+		m = pos & (pos >> (H1 - 1));
+		if((m & (m >> 2 * (H1 - 1))) != 0) return true;
+
+		//Diagonal going up to the right
+		m = pos & (pos >> (H1 + 1));
+		return (m & (m >> 2 * (H1 + 1))) != 0;
+	}
+
+	/**
+	 * Returns every occupied cell
+	 */
+	public long mask() {
+		return discs[0] | discs[1];
+	}
+
+	/**
+	 * Returns the discs of the player to move
+	 */
+	public long current() {
+		return discs[turn];
+	}
+
+	/**
+	 * Returns the discs of the player who just moved
+	 */
+	public long opponent() {
+		return discs[turn ^ 1];
+	}
+
+	/**
+	 * Returns a key that is unique for the position as seen by the player to move
+	 */
+	public long key() {
+		return discs[turn] + mask();
+	}
+
+	/**
+	 * Returns the player to move, 1 or 2
+	 */
+	public int getPlayer() {
+		return turn + 1;
+	}
+
+	/**
+	 * Returns the number of discs on the board
+	 */
+	public int getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Returns the number of discs in the column
+	 */
+	public int getHeight(int col) {
+		return height[col] - col * H1;
+	}
+
+	/**
+	 * Returns true if there is no free cell left
+	 */
+	public boolean isFull() {
+		return (mask() & BOARD) == BOARD;
+	}
+
+	/**
+	 * Returns a mask of every playable cell in the column
+	 */
+	public static long columnMask(int col) {
+		return ((1L << ROWS) - 1) << (col * H1);
+	}
+
+	/*
+	 * Builds a mask with the bottom bit of every column set
+	 */
+	private static long bottomMask() {
+		long mask = 0;
+		for(int col = 0; col < COLS; col++)
+			mask |= 1L << (col * H1);
+		return mask;
+	}
+}
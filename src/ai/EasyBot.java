@@ -1,6 +1,7 @@
 package ai;
 
 import engine.Move;
+import metrics.MoveEvent;
 
 import java.util.ArrayList;
 import java.util.Random;
@@ -21,7 +22,7 @@ public class EasyBot extends Player implements AI {
     public ArrayList<Integer> getFreeMoves(int[][] board) {
         ArrayList<Integer> list = new ArrayList<>();
 
-        for(int i = 0; i < board.length; i++) {
+        for(int i = 0; i < board[0].length; i++) {
             if(board[0][i] == 0)
                 list.add(i);
         }
@@ -37,14 +38,21 @@ public class EasyBot extends Player implements AI {
      * @return int
      */
     public int move(int[][] board, Move lastMove) {
+        MoveEvent event = new MoveEvent();
+        event.begin();
 
-        if(lastMove == null)
-            return 3;
+        int col;
+        if(lastMove == null) {
+            col = 3;
+        } else {
+            ArrayList<Integer> list = getFreeMoves(board);
 
-        ArrayList<Integer> list = getFreeMoves(board);
+            Random rand = new Random();
 
-        Random rand = new Random();
+            col = list.get(rand.nextInt(list.size()));
+        }
 
-        return list.get(rand.nextInt(list.size()));
+        event.finish("EasyBot", PLAYER, col);
+        return col;
     }
 }
@@ -0,0 +1,180 @@
+package ai;
+
+import engine.BoardSnapshot;
+import engine.Move;
+import metrics.Metrics;
+import metrics.MoveEvent;
+import metrics.SearchMetrics;
+
+public class ExpertBot extends Player implements AI {
+
+	public static final long DEFAULT_MOVE_MILLIS = 1000;
+
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	//Pondering stops on its own after this long, in case the opponent never moves
+	public static final long MAX_PONDER_MILLIS = 30000;
+
+	private static final SearchMetrics METRICS = Metrics.search("ExpertBot");
+
+	private final ParallelSearch search;
+	private final long moveMillis; //How long the bot may think about each move
+	private final Ponderer ponderer; //null if the bot does not think on the opponent's time
+	private int lastDepth = Integer.MAX_VALUE; //Depth the last full search reached, none until one has run
+	private volatile boolean left = false; //Set once the bot is out of the game, so a move still running does not ponder
+
+	//Constructors
+	public ExpertBot(int playerNum) {
+		this(playerNum, DEFAULT_MOVE_MILLIS, Search.DEFAULT_TABLE_MB, DEFAULT_THREADS);
+	}
+	public ExpertBot(int playerNum, long moveMillis, int tableMegabytes, int threads) {
+		this(playerNum, moveMillis, tableMegabytes, threads, true);
+	}
+	public ExpertBot(int playerNum, long moveMillis, int tableMegabytes, int threads, boolean ponder) {
+		super(playerNum, "Expert", "Computer");
+		this.moveMillis = moveMillis;
+		this.search = new ParallelSearch(threads, tableMegabytes);
+		this.ponderer = ponder ? new Ponderer(search.getTable()) : null;
+	}
+	public ExpertBot(int playerNum, String name, String bot) {
+		super(playerNum, name, bot);
+		this.moveMillis = DEFAULT_MOVE_MILLIS;
+		this.search = new ParallelSearch(DEFAULT_THREADS, Search.DEFAULT_TABLE_MB);
+		this.ponderer = new Ponderer(search.getTable());
+	}
+
+	/**
+	 * Returns the best move found by an alpha-beta search, where both players
+	 * are assumed to play their best reply. The search goes deeper until the
+	 * time for the move is used up. While the opponent thinks, the bot keeps
+	 * searching their likely replies, and if the reply they play was searched
+	 * as deep as a normal move would be, its answer is played right away
+	 *
+	 * @param board the current state of the game
+	 * @param lastMove the last move that that has been played in the game, null if its the start
+	 * @return int - the best move
+	 */
+	public int move(int[][] board, Move lastMove) {
+		return move(new BitBoard(board, PLAYER), lastMove);
+	}
+
+	/**
+	 * Same as move with an array, the snapshot's discs are copied straight
+	 * into the bot's board
+	 */
+	@Override
+	public int move(BoardSnapshot board, Move lastMove) {
+		return move(new BitBoard(board, PLAYER), lastMove);
+	}
+
+	/*
+	 * Times the move for the flight recorder
+	 */
+	private int move(BitBoard position, Move lastMove) {
+		MoveEvent event = new MoveEvent();
+		event.begin();
+		int col = chooseMove(position, lastMove, event);
+		event.finish("ExpertBot", PLAYER, col);
+		return col;
+	}
+
+	/*
+	 * Picks the move, filling in the event with what the search found
+	 */
+	private int chooseMove(BitBoard position, Move lastMove, MoveEvent event) {
+
+		if(ponderer != null)
+			ponderer.stop();
+
+		//If the game just started
+		if(lastMove == null)
+			return ponder(position, 3);
+
+		//If the position has been worked out ahead of time
+		int bookMove = OpeningBook.getDefault().getMove(position);
+		if(bookMove != -1)
+			return ponder(position, bookMove);
+
+		//If the opponent played a reply that was already searched
+		if(ponderer != null) {
+			int ponderMove = ponderer.getMove(position, lastDepth);
+			if(ponderMove != -1)
+				return ponder(position, ponderMove);
+		}
+
+		long start = System.nanoTime();
+		search.setPosition(position);
+		search.search(Search.MAX_DEPTH, moveMillis);
+		lastDepth = search.getDepth();
+		recordMetrics(System.nanoTime() - start);
+		event.setSearch(search.getDepth(), search.getNodes(), search.getScore());
+
+		return ponder(position, search.getBestMove());
+	}
+
+	/**
+	 * Stops the search, which plays the best move from the last depth it finished
+	 */
+	@Override
+	public void stop() {
+		search.stop();
+	}
+
+	@Override
+	public void resetStop() {
+		search.resetStop();
+	}
+
+	/**
+	 * Stops pondering, since the bot will not be asked for another move. A move
+	 * that is still being worked out on another thread does not start pondering
+	 * when it returns
+	 */
+	@Override
+	public void leaveGame() {
+		left = true;
+		if(ponderer != null) {
+			synchronized(ponderer) {
+				ponderer.stop();
+			}
+		}
+	}
+
+	/**
+	 * Returns the ponderer, null if the bot does not ponder
+	 */
+	public Ponderer getPonderer() {
+		return ponderer;
+	}
+
+	/*
+	 * Hands the counts of the search that just finished to the metrics
+	 */
+	private void recordMetrics(long nanos) {
+		Search main = search.getMainSearch();
+
+		METRICS.recordMove(nanos, search.getNodes(), search.getDepth());
+		METRICS.recordBranchingFactor(main.getBranchingFactor());
+		METRICS.recordTable(search.getTableProbes(), search.getTableHits());
+		METRICS.recordCutoffs(main.getNodes(), main.getOrdering().getCutoffs(), main.getOrdering().getFirstMoveCutoffs());
+	}
+
+	/*
+	 * Starts pondering on the position after the move, unless the move ends the
+	 * game or the bot has left it. The check is made holding the ponderer, so
+	 * leaveGame either sees the thread started or stops it from starting
+	 */
+	private int ponder(BitBoard position, int col) {
+		if(ponderer == null || col == -1 || position.isWinningMove(col))
+			return col;
+
+		position.play(col);
+		if(!position.isFull()) {
+			synchronized(ponderer) {
+				if(!left)
+					ponderer.start(position, MAX_PONDER_MILLIS);
+			}
+		}
+		return col;
+	}
+}
@@ -1,10 +1,9 @@
 package ai;
 
 import engine.Move;
-
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import metrics.Metrics;
+import metrics.MoveEvent;
+import metrics.SearchMetrics;
 
 public class HardBot extends Player implements AI{
 
@@ -14,31 +13,32 @@ public class HardBot extends Player implements AI{
 	private class GameTree {
 
 		/*
-		 * Encapsulates all important values for each board configuration
+		 * Encapsulates all important values for each board configuration. The board
+		 * itself is not stored, it is played and taken back on the tree's BitBoard
+		 * while the tree is being built
 		 */
 		private class Node {
 
-			int[][] board;
-			Map<Node, Integer> children = new LinkedHashMap<>(); //Holds all child nodes as keys and the previous move as the value
+			Node[] children; //Index corresponds to the column played, null if the column was full or this is a leaf
 			int win = 0; // If the current board has a winner, this is their value
 			int score = 0; // The higher the value, the more importance the board has
-			int depth; // How far down the node is in the tree
+			int depth; // How far down the node is in the tree, counted from the first root
 
 
-			public Node(int[][] map, int depth) {
-				this.board = map;
+			public Node(int depth) {
 				this.depth = depth;
 			}
 		}
 
 		Node root;
+		private int rootDepth = 0; //The depth of the current root, the tree moves down as the game goes on
+		private BitBoard board; //The position of the node currently being expanded
 		private int player; //The AI's player value
 		private int oppPlayer; //The opponent player's value
 
-		final int ROWS = 6, COLS = 7; //Dimensions
-
 		public GameTree(int[][] board, int player) {
-			root = new Node(board, 0);
+			this.board = new BitBoard(board, player);
+			root = new Node(0);
 			this.player = player;
 
 			//Setting the correct player values
@@ -48,53 +48,70 @@ public class HardBot extends Player implements AI{
 				oppPlayer = 1;
 		}
 
+		/*
+		 * Moves the root down to the position after the AI's move and the
+		 * opponent's reply, keeping every node already built below it. Returns
+		 * false if the tree does not lead to the given position, the tree is then
+		 * left as it was
+		 */
+		public boolean advance(int aiCol, int oppCol, BitBoard position) {
+			Node child = root.children == null ? null : root.children[aiCol];
+			if(child == null || child.children == null || child.children[oppCol] == null)
+				return false;
+
+			board.play(aiCol);
+			board.play(oppCol);
+			if(board.key() != position.key()) {
+				board.undo();
+				board.undo();
+				return false;
+			}
+
+			root = child.children[oppCol];
+			rootDepth += 2;
+			return true;
+		}
+
 		/*
 		 * Creates all children and leaf nodes with winning Nodes being leaves.
 		 * Also creates the score of leaf nodes giving higher priority to not
-		 * picking losing branches
+		 * picking losing branches. Nodes that already exist are kept and only
+		 * grown further down
 		 */
 		public void makeTree(Node root, int times) {
+			nodes++;
 
-			//if the depth is even, the board resulted in an opponents move
-			if(root.depth % 2 == 0) {
+			//if the player who made the last move won
+			if(board.lastMoveWon()) {
 
-				//if the opponent won
-				if(detectPlayerWin(root.board, oppPlayer)) {
+				//if the depth is even, the board resulted in an opponents move
+				if((root.depth - rootDepth) % 2 == 0) {
 					root.win = oppPlayer;
 					root.score = -11;
-					return;
-				}
-
-			} else { //if the depth is odd, the board resulted in the AI's move
-
-				//if the AI won
-				if(detectPlayerWin(root.board, player)) {
+				} else { //if the depth is odd, the board resulted in the AI's move
 					root.win = player;
 					root.score = 10;
-					return;
 				}
-
+				return;
 			}
 
-			if(times <= 0) return; //Base case
-
-			ArrayList<Integer> moves = getFreePositions(root.board); //Available moves
-
-			if(root.depth % 2 == 0) {
+			if(times <= 0 || board.isFull() || stopRequested) return; //Base case
 
-				//Recursively calling method on all created child nodes
-				for(int col : moves) {
-					Node child = new Node(placePiece(root.board, col, player), root.depth + 1);
-					root.children.put(child, col);
-					makeTree(child, times - 1);
+			if(root.children == null) {
+				root.children = new Node[BitBoard.COLS];
+				for(int col = 0; col < BitBoard.COLS; col++) {
+					if(board.canPlay(col))
+						root.children[col] = new Node(root.depth + 1);
 				}
-			} else {
+			}
 
-				//Recursively calling method on all created child nodes
-				for(int col : moves) {
-					Node child = new Node(placePiece(root.board, col, oppPlayer), root.depth + 1);
-					root.children.put(child, col);
-					makeTree(child, times - 1);
+			//Recursively calling method on all child nodes, the BitBoard
+			//keeps track of whose disc is being placed
+			for(int col = 0; col < BitBoard.COLS; col++) {
+				if(root.children[col] != null) {
+					board.play(col);
+					makeTree(root.children[col], times - 1);
+					board.undo();
 				}
 			}
 		}
@@ -109,21 +126,23 @@ public class HardBot extends Player implements AI{
 			int scoreSum = 0;
 
 			//Going down to the leaf nodes
-			if(!root.children.isEmpty()) {
-				for(Node child : root.children.keySet()) {
-					setNodeScores(child);
+			if(root.children != null) {
+				for(Node child : root.children) {
+					if(child != null)
+						setNodeScores(child);
 				}
 			} else {
 				return;
 			}
 
 			//Getting the sum of the children scores
-			for(Node child : root.children.keySet()) {
-				scoreSum += child.score;
+			for(Node child : root.children) {
+				if(child != null)
+					scoreSum += child.score;
 			}
 
 			//Giving higher priority to the nodes closer to the root
-			root.score = scoreSum / (root.depth + 1);
+			root.score = scoreSum / (root.depth - rootDepth + 1);
 		}
 
 		/*
@@ -131,82 +150,17 @@ public class HardBot extends Player implements AI{
 		 */
 		public int[] getNodeScores(Node root) {
 
-			int[] arr = new int[7]; //Index corresponds to column
-
-			for(Node child : root.children.keySet()) {
-				arr[root.children.get(child)] = child.score;
-			}
-
-			return arr;
-		}
-
-		/*
-		 * Returns true if it detects that a player has a win starting at
-		 * that specific location
-		 */
-		private boolean detectPlayerWin(int[][] board, int player) {
-			for(int row = 0; row < ROWS; row++) {
-				for(int col = 0; col < COLS; col++) {
-					if(board[row][col] == player) {
-						if(detectPieceWin(board, row, col))
-							return true;
-					}
-				}
-			}
-			return false;
-		}
-
-		/*
-		 * Returns true if the piece at the row and col is the leftmost or topmost
-		 * piece of a "4 in a row", win
-		 */
-		private boolean detectPieceWin(int[][] board, int row, int col) {
-
-			//current piece
-			int cur = board[row][col];
-
-			//Go down
-			boolean win = true;
-			for(int i = 0; i < 4; i++) {
-				if(!(inBounds(row + i, col) && cur == board[row + i][col])) {
-					win = false;
-					break;
-				}
-			}
-			if(win) return true;
+			int[] arr = new int[BitBoard.COLS]; //Index corresponds to column
 
+			if(root.children == null)
+				return arr;
 
-			//Go right
-			win = true;
-			for(int i = 0; i < 4; i++) {
-				if(!(inBounds(row, col + i) && cur == board[row][col + i])) {
-					win = false;
-					break;
-				}
+			for(int col = 0; col < arr.length; col++) {
+				if(root.children[col] != null)
+					arr[col] = root.children[col].score;
 			}
-			if(win) return true;
-
-			//Go down diagonal
-			win = true;
-			for(int i = 0; i < 4; i++) {
-				if(!(inBounds(row + i, col + i) && cur == board[row + i][col + i])) {
-					win = false;
-					break;
-				}
 
-			}
-			if(win) return true;
-
-			//Go up diagonal
-			win = true;
-			for(int i = 0; i < 4; i++) {
-				if(!(inBounds(row - i, col + i) && cur == board[row - i][col + i])) {
-					win = false;
-					break;
-				}
-			}
-
-			return win;
+			return arr;
 		}
 
 		/*
@@ -214,73 +168,46 @@ public class HardBot extends Player implements AI{
 		 * none, return -1
 		 */
 		public int win() {
-			for(Node child : root.children.keySet()) {
-				if (child.win == player)
-					return root.children.get(child);
+			if(root.children == null)
+				return -1;
+
+			for(int col = 0; col < root.children.length; col++) {
+				if(root.children[col] != null && root.children[col].win == player)
+					return col;
 			}
 
 			return -1;
 		}
 
+	}
 
-		/*
-		 * Returns a List of available possible columns to pick, meaning the ones that
-		 * it does not return are currently full
-		 */
-		private ArrayList<Integer> getFreePositions(int[][] board) {
-			ArrayList<Integer> moves = new ArrayList<>();
-
-			for(int i = 0; i < board[0].length; i++) {
-
-				//Checking top row for empty values
-				if(board[0][i] == 0)
-					moves.add(i);
-
-			}
+	private static final int TREE_DEPTH = 7; //How many moves ahead the bot looks
 
-			return moves;
-		}
+	private static final SearchMetrics METRICS = Metrics.search("HardBot");
 
-
-		/*
-		 * Returns a configuration of the passed board with the 'player's piece placed
-		 * into the passed column
-		 */
-		private int[][] placePiece(int[][] board, int col, int player) {
-
-			//Creating a copy of the passed board to return it
-			int[][] result = new int[board.length][board[0].length];
-			for(int i = 0; i < board.length; i++)
-				result[i] = board[i].clone();
-
-			//Goes down the board until it finds the piece it is supposed to go overtop of
-			for(int row = 0; row < board.length; row++) {
-				if(board[row][col] != 0) {
-					result[row - 1][col] = player;
-					return result;
-				}
-			}
-
-			//Placing the piece into an empty column
-			result[result.length - 1][col] = player;
-			return result;
-		}
-
-		/*
-		 * Returns true if the row and column are within the bounds of the board
-		 */
-		private boolean inBounds(int row, int col) {
-			return row >= 0 && row < ROWS && col >= 0 && col < COLS;
-		}
-
-	}
+	private final boolean depthFirst; //Scores the columns without building the tree, the default
+	private GameTree tree = null; //Kept between moves, null if there is nothing to reuse
+	private int lastCol = -1; //The last column the bot played
+	private long nodes = 0; //Positions looked at for the current move
+	private volatile boolean stopRequested = false; //Set by another thread to cut the current move short
+	private volatile boolean left = false; //Set once the bot is out of the game, so a move still running does not keep its tree
 
 	//Constructors
 	public HardBot(int playerNum) {
+		this(playerNum, true);
+	}
+	/**
+	 * @param depthFirst true to score the columns depth-first, which only needs
+	 * the call stack and is the default, false to build the game tree and keep
+	 * it between moves
+	 */
+	public HardBot(int playerNum, boolean depthFirst) {
 		super(playerNum, "Hard", "Computer");
+		this.depthFirst = depthFirst;
 	}
 	public HardBot(int playerNum, String name, String bot) {
 		super(playerNum, name, bot);
+		this.depthFirst = true;
 	}
 
 	/**
@@ -292,25 +219,160 @@ public class HardBot extends Player implements AI{
 	 * @return int - the optimal move
 	 */
 	public int move(int[][] board, Move lastMove) {
+		MoveEvent event = new MoveEvent();
+		event.begin();
+		int col = chooseMove(board, lastMove, event);
+		event.finish("HardBot", PLAYER, col);
+		return col;
+	}
+
+	/*
+	 * Picks the move, filling in the event with what the search found
+	 */
+	private int chooseMove(int[][] board, Move lastMove, MoveEvent event) {
 
 		//If the game just started, of in the middle
 		if(lastMove == null)
-			return 3;
+			return played(3);
 
-		//creating the game tree and initializing its node's values
-		GameTree gt = new GameTree(board, PLAYER);
-		gt.makeTree(gt.root, 7);
-		gt.setNodeScores(gt.root);
+		//If the position has been worked out ahead of time
+		BitBoard position = new BitBoard(board, PLAYER);
+		int bookMove = OpeningBook.getDefault().getMove(position);
+		if(bookMove != -1)
+			return played(bookMove);
 
-		//If there is an immediate win option, pick it
-		if(gt.win() != -1)
-			return gt.win();
+		long start = System.nanoTime();
+		nodes = 0;
+
+		if(depthFirst) {
+			int col = moveDepthFirst(board, position, event);
+			recordMetrics(System.nanoTime() - start);
+			return played(col);
+		}
+
+		//Reusing the tree from the last move if the game carried on from it,
+		//otherwise creating a new one. The move works on its own reference,
+		//since leaveGame can drop the kept tree from another thread
+		GameTree current = tree;
+		if(current == null || lastCol == -1 || !current.advance(lastCol, lastMove.getPosition(), position))
+			current = new GameTree(board, PLAYER);
+
+		//Growing the game tree and initializing its node's values
+		current.makeTree(current.root, TREE_DEPTH);
+		current.setNodeScores(current.root);
+		recordMetrics(System.nanoTime() - start);
 
 		//Getting an array in which the index corresponds to the columns and hold the optimal moves
-		int[] arr = gt.getNodeScores(gt.root);
+		int[] arr = current.getNodeScores(current.root);
+
+		//If there is an immediate win option, pick it, otherwise the optimal column
+		int col = current.win() != -1 ? current.win() : pickCol(board, arr);
+		event.setSearch(TREE_DEPTH, nodes, arr[col]);
+		keepTree(current);
+		return played(col);
+	}
+
+	/*
+	 * Keeps the tree for the next move, unless the bot has left the game
+	 */
+	private synchronized void keepTree(GameTree current) {
+		tree = left ? null : current;
+	}
 
-		//Return the optimal column
-		return pickCol(board, arr);
+	/*
+	 * Picks the same column as the game tree would, but works the scores out in
+	 * one pass over the moves, playing and taking back each one on the board
+	 * instead of keeping the nodes
+	 */
+	private int moveDepthFirst(int[][] board, BitBoard position, MoveEvent event) {
+
+		//If there is an immediate win option, pick it
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(position.canPlay(col) && position.isWinningMove(col))
+				return col;
+		}
+
+		int[] arr = new int[BitBoard.COLS]; //Index corresponds to column
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(position.canPlay(col)) {
+				position.play(col);
+				arr[col] = scoreNode(position, 1, TREE_DEPTH - 1);
+				position.undo();
+			}
+		}
+
+		int col = pickCol(board, arr);
+		event.setSearch(TREE_DEPTH, nodes, arr[col]);
+		return col;
+	}
+
+	/*
+	 * Returns the score the game tree would give the node at the depth for the
+	 * position on the board: 10 or -11 if the last move won, the sum of the
+	 * children's scores divided by the depth plus one otherwise, and 0 at the
+	 * bottom of the tree
+	 */
+	private int scoreNode(BitBoard board, int depth, int times) {
+		nodes++;
+
+		//if the player who made the last move won, odd depths are the AI's moves
+		if(board.lastMoveWon())
+			return depth % 2 == 0 ? -11 : 10;
+
+		if(times <= 0 || board.isFull() || stopRequested) return 0; //Base case
+
+		int scoreSum = 0;
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(board.canPlay(col)) {
+				board.play(col);
+				scoreSum += scoreNode(board, depth + 1, times - 1);
+				board.undo();
+			}
+		}
+
+		return scoreSum / (depth + 1);
+	}
+
+	/*
+	 * Hands the node count and time of the move to the metrics
+	 */
+	private void recordMetrics(long nanos) {
+		METRICS.recordMove(nanos, nodes, TREE_DEPTH);
+	}
+
+	/*
+	 * Remembers the column the bot is about to play so the tree can be moved
+	 * down to it on the next move
+	 */
+	private int played(int col) {
+		lastCol = col;
+		return col;
+	}
+
+	/**
+	 * Stops looking further ahead. The move is picked from the scores worked
+	 * out so far, and a tree that was not fully grown is grown on the next move
+	 */
+	@Override
+	public void stop() {
+		stopRequested = true;
+	}
+
+	@Override
+	public void resetStop() {
+		stopRequested = false;
+	}
+
+	/**
+	 * Drops the kept game tree and cuts short a move still being worked out,
+	 * since the bot will not be asked for another move
+	 */
+	@Override
+	public synchronized void leaveGame() {
+		left = true;
+		stopRequested = true;
+		tree = null;
+		lastCol = -1;
 	}
 
 	/*
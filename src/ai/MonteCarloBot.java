@@ -0,0 +1,113 @@
+package ai;
+
+import engine.BoardSnapshot;
+import engine.Move;
+import metrics.Metrics;
+import metrics.MoveEvent;
+import metrics.SearchMetrics;
+
+public class MonteCarloBot extends Player implements AI {
+
+	public static final long DEFAULT_MOVE_MILLIS = 1000;
+
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static final SearchMetrics METRICS = Metrics.search("MonteCarloBot");
+
+	private final MonteCarloSearch search;
+	private final long moveMillis; //How long the bot may think about each move
+
+	//Constructors
+	public MonteCarloBot(int playerNum) {
+		this(playerNum, DEFAULT_MOVE_MILLIS, DEFAULT_THREADS);
+	}
+	public MonteCarloBot(int playerNum, long moveMillis, int threads) {
+		super(playerNum, "Monte Carlo", "Computer");
+		this.moveMillis = moveMillis;
+		this.search = new MonteCarloSearch(threads, MonteCarloSearch.DEFAULT_NODES);
+	}
+	public MonteCarloBot(int playerNum, String name, String bot) {
+		super(playerNum, name, bot);
+		this.moveMillis = DEFAULT_MOVE_MILLIS;
+		this.search = new MonteCarloSearch(DEFAULT_THREADS, MonteCarloSearch.DEFAULT_NODES);
+	}
+
+	/**
+	 * Returns the move that did best over many games played out at random from
+	 * the current position, spending more of the games on the moves that look
+	 * good so far. A winning move is always taken
+	 *
+	 * @param board the current state of the game
+	 * @param lastMove the last move that that has been played in the game, null if its the start
+	 * @return int - the best move
+	 */
+	public int move(int[][] board, Move lastMove) {
+		return move(new BitBoard(board, PLAYER), lastMove);
+	}
+
+	/**
+	 * Same as move with an array, the snapshot's discs are copied straight
+	 * into the bot's board
+	 */
+	@Override
+	public int move(BoardSnapshot board, Move lastMove) {
+		return move(new BitBoard(board, PLAYER), lastMove);
+	}
+
+	/*
+	 * Times the move for the flight recorder
+	 */
+	private int move(BitBoard position, Move lastMove) {
+		MoveEvent event = new MoveEvent();
+		event.begin();
+		int col = chooseMove(position, lastMove, event);
+		event.finish("MonteCarloBot", PLAYER, col);
+		return col;
+	}
+
+	/*
+	 * Picks the move, filling in the event with what the search found
+	 */
+	private int chooseMove(BitBoard position, Move lastMove, MoveEvent event) {
+
+		//If the game just started
+		if(lastMove == null)
+			return 3;
+
+		//If there is an immediate win, take it
+		for(int col : MoveOrdering.CENTER_FIRST) {
+			if(position.canPlay(col) && position.isWinningMove(col))
+				return col;
+		}
+
+		long start = System.nanoTime();
+		search.setPosition(position);
+		int col = search.search(moveMillis);
+
+		//Each playout counts as a node, the tree has no fixed depth and the
+		//score is the win rate in tenths of a percent
+		METRICS.recordMove(System.nanoTime() - start, search.getPlayouts(), -1);
+		event.setSearch(-1, search.getPlayouts(), (int) (search.getWinRate() * 1000));
+		return col;
+	}
+
+	/**
+	 * Stops the playouts, the most visited column so far is played
+	 */
+	@Override
+	public void stop() {
+		search.stop();
+	}
+
+	@Override
+	public void resetStop() {
+		search.resetStop();
+	}
+
+	/**
+	 * Returns the search, which reports the playouts per second of the last move
+	 */
+	public MonteCarloSearch getSearch() {
+		return search;
+	}
+}
@@ -0,0 +1,356 @@
+package ai;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monte Carlo tree search with UCT. Each iteration walks down the tree picking
+ * the child with the best mix of results so far and how little it has been
+ * tried, adds the children of the node it ends on, plays the rest of the game
+ * out at random and counts the result in every node on the way back up.
+ *
+ * Every thread works on the same tree. A thread counts its visit to a node on
+ * the way down but only adds the result on the way back up, so until then the
+ * node looks like it lost. This virtual loss steers the other threads to
+ * different parts of the tree.
+ *
+ * The nodes are kept in arrays instead of objects, and the seven children of
+ * a node are always next to each other, one for each column. Playouts run on
+ * a BitBoard owned by the thread, so no memory is allocated while searching.
+ */
+public class MonteCarloSearch {
+
+	public static final int DEFAULT_NODES = 1 << 21;
+
+	private static final double EXPLORATION = 1.0; //How much trying new moves counts against good results
+	private static final int UNEXPANDED = -1; //The node has no children yet
+	private static final int EXPANDING = -2; //A thread is adding the node's children
+	private static final int CLOCK_MASK = 63; //The clock is checked every 64 iterations
+
+	//Results are counted in half points, from the view of the player who moved into the node
+	private static final int WIN = 2;
+	private static final int DRAW = 1;
+
+	private final int capacity;
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray points;
+	private final AtomicIntegerArray children; //Index of the first child, or UNEXPANDED or EXPANDING
+	private final AtomicInteger nextFree = new AtomicInteger();
+	private final LongAdder playouts = new LongAdder();
+	private final int threads;
+
+	private final BitBoard root = new BitBoard();
+	private long deadline = 0; //System.nanoTime the search has to stop at
+	private long millis = 0; //How long the last search took
+	private volatile boolean aborted = false; //Set by another thread to stop the search, stays set until resetStop
+
+	/**
+	 * @param threads number of threads to search with, at least 1
+	 * @param nodes the most nodes the tree can hold, once it is full the tree stops growing
+	 */
+	public MonteCarloSearch(int threads, int nodes) {
+		this.threads = Math.max(1, threads);
+		this.capacity = Math.max(1 + BitBoard.COLS, nodes);
+		visits = new AtomicIntegerArray(capacity);
+		points = new AtomicIntegerArray(capacity);
+		children = new AtomicIntegerArray(capacity);
+	}
+
+	/**
+	 * Sets the position to search from
+	 *
+	 * @param board the position, it is copied so the caller can keep using it
+	 */
+	public void setPosition(BitBoard board) {
+		root.copyFrom(board);
+	}
+
+	/**
+	 * Searches with every thread until the time runs out
+	 *
+	 * @param millis how long the search may take
+	 * @return the best column, or -1 if there is no legal move
+	 */
+	public int search(long millis) {
+		long start = System.nanoTime();
+		deadline = start + millis * 1_000_000L;
+
+		nextFree.set(1);
+		initNode(0);
+		playouts.reset();
+
+		Thread[] helpers = new Thread[threads - 1];
+		for(int i = 0; i < helpers.length; i++) {
+			Worker helper = new Worker(i + 1);
+			helpers[i] = new Thread(helper, "mcts-helper-" + (i + 1));
+			helpers[i].setDaemon(true);
+			helpers[i].start();
+		}
+
+		new Worker(0).run();
+
+		for(Thread helper : helpers) {
+			try {
+				helper.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		this.millis = (System.nanoTime() - start) / 1_000_000L;
+		return getBestMove();
+	}
+
+	/**
+	 * Stops a search running on another thread. The stop lasts until
+	 * resetStop, so a search started after it returns straight away too
+	 */
+	public void stop() {
+		aborted = true;
+	}
+
+	/**
+	 * Clears a stop, so the next search runs until its time is up
+	 */
+	public void resetStop() {
+		aborted = false;
+	}
+
+	/**
+	 * Returns the most visited column at the root, -1 if there is no legal move
+	 */
+	public int getBestMove() {
+		int first = children.get(0);
+		int best = -1, most = -1;
+
+		for(int col : MoveOrdering.CENTER_FIRST) {
+			if(!root.canPlay(col))
+				continue;
+
+			int n = first < 0 ? 0 : visits.get(first + col);
+			if(n > most) {
+				most = n;
+				best = col;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Returns the share of points the best column scored, from 0 for a loss to 1 for a win
+	 */
+	public double getWinRate() {
+		int best = getBestMove();
+		int first = children.get(0);
+		if(best == -1 || first < 0)
+			return 0.5;
+
+		int n = visits.get(first + best);
+		return n == 0 ? 0.5 : points.get(first + best) / (2.0 * n);
+	}
+
+	/**
+	 * Returns the number of games played out in the last search
+	 */
+	public long getPlayouts() {
+		return playouts.sum();
+	}
+
+	/**
+	 * Returns the number of games played out per second in the last search
+	 */
+	public long getPlayoutsPerSecond() {
+		return millis == 0 ? 0 : getPlayouts() * 1000 / millis;
+	}
+
+	/**
+	 * Returns the number of nodes in the tree
+	 */
+	public int getNodes() {
+		return Math.min(nextFree.get(), capacity);
+	}
+
+	/**
+	 * Returns how long the last search took in ms
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * Returns the number of threads searching
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/*
+	 * Clears a node before it is put in the tree
+	 */
+	private void initNode(int node) {
+		visits.set(node, 0);
+		points.set(node, 0);
+		children.set(node, UNEXPANDED);
+	}
+
+	/*
+	 * The search loop of one thread, with the thread's own board and random numbers
+	 */
+	private class Worker implements Runnable {
+
+		private final BitBoard board = new BitBoard();
+		private final int[] path = new int[BitBoard.SIZE + 1]; //Nodes visited by the current iteration
+		private long seed;
+		private long count = 0;
+
+		Worker(int id) {
+			seed = System.nanoTime() ^ (0x9E3779B97F4A7C15L * (id + 1));
+		}
+
+		@Override
+		public void run() {
+			while(!aborted) {
+				if((++count & CLOCK_MASK) == 0 && System.nanoTime() - deadline > 0)
+					break;
+				iterate();
+			}
+			playouts.add(count);
+		}
+
+		/*
+		 * Walks down the tree from the root, grows it by one node's children,
+		 * plays the game out and counts the result along the path
+		 */
+		private void iterate() {
+			board.copyFrom(root);
+
+			int node = 0, length = 0;
+			path[length++] = node;
+			visits.incrementAndGet(node);
+
+			int result; //For the player who moved into the last node on the path
+
+			while(true) {
+				if(board.isFull()) {
+					result = DRAW;
+					break;
+				}
+
+				int first = children.get(node);
+				if(first == UNEXPANDED)
+					first = expand(node);
+				if(first < 0) {
+					result = WIN - playout();
+					break;
+				}
+
+				int col = select(node, first);
+				node = first + col;
+				path[length++] = node;
+				visits.incrementAndGet(node);
+
+				boolean won = board.isWinningMove(col);
+				board.play(col);
+				if(won) {
+					result = WIN;
+					break;
+				}
+			}
+
+			//The root's points are never looked at
+			for(int i = length - 1; i > 0; i--) {
+				points.addAndGet(path[i], result);
+				result = WIN - result;
+			}
+		}
+
+		/*
+		 * Adds the children of a node. Returns the first child, or a negative
+		 * number if another thread is adding them or the tree is full
+		 */
+		private int expand(int node) {
+			if(nextFree.get() + BitBoard.COLS > capacity)
+				return UNEXPANDED;
+			if(!children.compareAndSet(node, UNEXPANDED, EXPANDING))
+				return children.get(node);
+
+			int first = nextFree.getAndAdd(BitBoard.COLS);
+			if(first + BitBoard.COLS > capacity) {
+				children.set(node, UNEXPANDED);
+				return UNEXPANDED;
+			}
+
+			for(int col = 0; col < BitBoard.COLS; col++)
+				initNode(first + col);
+			children.set(node, first);
+			return first;
+		}
+
+		/*
+		 * Picks the child with the highest upper confidence bound. Children not
+		 * tried yet come first
+		 */
+		private int select(int node, int first) {
+			double logVisits = Math.log(Math.max(1, visits.get(node)));
+			double bestValue = Double.NEGATIVE_INFINITY;
+			int best = -1;
+
+			for(int col : MoveOrdering.CENTER_FIRST) {
+				if(!board.canPlay(col))
+					continue;
+
+				int n = visits.get(first + col);
+				if(n == 0)
+					return col;
+
+				double value = points.get(first + col) / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+				if(value > bestValue) {
+					bestValue = value;
+					best = col;
+				}
+			}
+
+			return best;
+		}
+
+		/*
+		 * Plays the game out and returns the result for the player to move. A
+		 * win is always taken and moves that let the opponent win next turn are
+		 * avoided, otherwise the moves are random
+		 */
+		private int playout() {
+			int start = board.getMoves();
+
+			while(true) {
+				boolean starterToMove = (board.getMoves() - start) % 2 == 0;
+
+				if(board.canWinNext())
+					return starterToMove ? WIN : 0;
+
+				long possible = board.nonLosingMoves();
+				if(possible == 0)
+					return starterToMove ? 0 : WIN;
+
+				//Picking one of the moves at random
+				for(int skip = random(Long.bitCount(possible)); skip > 0; skip--)
+					possible &= possible - 1;
+				board.play(Long.numberOfTrailingZeros(possible) / BitBoard.H1);
+
+				if(board.isFull())
+					return DRAW;
+			}
+		}
+
+		/*
+		 * Returns a random number from 0 up to but not including bound, using xorshift
+		 */
+		private int random(int bound) {
+			seed ^= seed << 13;
+			seed ^= seed >>> 7;
+			seed ^= seed << 17;
+			return (int) ((seed >>> 33) % bound);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package ai;
+
+import java.util.Arrays;
+
+/**
+ * Decides the order the search tries columns in. Alpha-beta prunes the most
+ * when the best move is searched first, so the columns are tried as
+ *
+ *  1. the best column stored in the transposition table
+ *  2. the killer moves, columns that caused a cutoff at the same ply elsewhere,
+ *     if they are turned on
+ *  3. everything else by its history score, with the center columns first on ties
+ *  4. columns that let the opponent win by playing on top of them
+ *
+ * The history score of a cell grows every time a disc there caused a cutoff.
+ * The move lists are allocated once, one per ply.
+ */
+public class MoveOrdering {
+
+	//Center columns take part in the most four in a rows
+	public static final int[] CENTER_FIRST = { 3, 2, 4, 1, 5, 0, 6 };
+
+	private static final int NONE = -1;
+	private static final int KILLERS = 2; //Killer moves kept per ply
+	private static final int HISTORY_MAX = 1 << 24; //History scores are halved before they can overflow
+
+	private final int[][] moves = new int[BitBoard.SIZE + 1][BitBoard.COLS];
+	private final int[][] killers = new int[BitBoard.SIZE + 1][KILLERS];
+	private final int[][] history = new int[2][BitBoard.COLS * BitBoard.H1]; //Indexed by player then cell
+
+	private long cutoffs = 0; //Nodes where a move caused a cutoff
+	private long firstMoveCutoffs = 0; //Nodes where the first move tried caused the cutoff
+
+	private final boolean useKillers; //Whether killer moves are tried before the rest
+
+	/**
+	 * Creates an ordering without killer moves. In Connect 4 the same column
+	 * rarely refutes two different positions, and trying killers first makes
+	 * sibling subtrees share fewer transpositions
+	 */
+	public MoveOrdering() {
+		this(false);
+	}
+
+	/**
+	 * @param useKillers whether killer moves are tried before the rest
+	 */
+	public MoveOrdering(boolean useKillers) {
+		this.useKillers = useKillers;
+		clear();
+	}
+
+	/**
+	 * Fills the move list of the ply with the legal columns, best first
+	 *
+	 * @param board the position to order the moves of
+	 * @param ply how many discs have been played since the root
+	 * @param hashMove the best column from the transposition table, or NO_MOVE
+	 * @return the number of legal columns, see getMoves for the list
+	 */
+	public int order(BitBoard board, int ply, int hashMove) {
+		int[] list = moves[ply];
+		int count = 0;
+
+		//Columns that let the opponent win on top of the new disc are kept for last
+		long bad = (board.opponentWinningCells() >>> 1) & board.legalMoves();
+
+		if(hashMove != TranspositionTable.NO_MOVE && board.canPlay(hashMove) && !isBad(board, hashMove, bad))
+			list[count++] = hashMove;
+
+		for(int killer : killers[ply]) {
+			if(useKillers && killer != NONE && board.canPlay(killer) && !isBad(board, killer, bad) && !contains(list, count, killer))
+				list[count++] = killer;
+		}
+
+		int first = count;
+		int[] scores = history[board.getPlayer() - 1];
+
+		//Insertion sort on the history score, going through the columns center first so ties keep that order
+		for(int col : CENTER_FIRST) {
+			if(!board.canPlay(col) || isBad(board, col, bad) || contains(list, first, col))
+				continue;
+
+			int score = scores[cell(board, col)];
+			int i = count++;
+			while(i > first && scores[cell(board, list[i - 1])] < score) {
+				list[i] = list[i - 1];
+				i--;
+			}
+			list[i] = col;
+		}
+
+		for(int col : CENTER_FIRST) {
+			if(board.canPlay(col) && isBad(board, col, bad))
+				list[count++] = col;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the move list filled by the last call to order for the ply
+	 */
+	public int[] getMoves(int ply) {
+		return moves[ply];
+	}
+
+	/**
+	 * Records that a column caused a beta cutoff. Must be called before the
+	 * column is played
+	 *
+	 * @param board the position the column was played in
+	 * @param col the column
+	 * @param ply how many discs have been played since the root
+	 * @param depth how deep the position was being searched
+	 * @param index where in the move list the column was
+	 */
+	public void cutoff(BitBoard board, int col, int ply, int depth, int index) {
+		cutoffs++;
+		if(index == 0)
+			firstMoveCutoffs++;
+
+		int[] killer = killers[ply];
+		if(killer[0] != col) {
+			killer[1] = killer[0];
+			killer[0] = col;
+		}
+
+		//Deeper cutoffs save more work, so they count for more
+		int[] scores = history[board.getPlayer() - 1];
+		int i = cell(board, col);
+		scores[i] += depth * depth;
+		if(scores[i] > HISTORY_MAX)
+			ageHistory();
+	}
+
+	/**
+	 * Forgets the killer moves and halves the history scores, so the ordering
+	 * follows the new position without throwing away everything it learnt
+	 */
+	public void newSearch() {
+		for(int[] killer : killers)
+			Arrays.fill(killer, NONE);
+
+		ageHistory();
+
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+	}
+
+	/**
+	 * Forgets everything learnt so far
+	 */
+	public void clear() {
+		for(int[] killer : killers)
+			Arrays.fill(killer, NONE);
+		for(int[] scores : history)
+			Arrays.fill(scores, 0);
+
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+	}
+
+	/**
+	 * Returns the number of nodes where a move caused a cutoff since the last new search
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * Returns the number of those cutoffs that were caused by the first move tried
+	 */
+	public long getFirstMoveCutoffs() {
+		return firstMoveCutoffs;
+	}
+
+	/**
+	 * Returns the share of cutoffs caused by the first move tried, from 0 to 1
+	 */
+	public double getFirstMoveCutoffRate() {
+		return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+	}
+
+	/*
+	 * Halves every history score
+	 */
+	private void ageHistory() {
+		for(int[] scores : history) {
+			for(int i = 0; i < scores.length; i++)
+				scores[i] /= 2;
+		}
+	}
+
+	/*
+	 * Returns the bit index of the cell a disc played in the column would land on
+	 */
+	private static int cell(BitBoard board, int col) {
+		return col * BitBoard.H1 + board.getHeight(col);
+	}
+
+	/*
+	 * Returns true if a disc played in the column lands on one of the bad cells
+	 */
+	private static boolean isBad(BitBoard board, int col, long bad) {
+		return (bad & (1L << cell(board, col))) != 0;
+	}
+
+	/*
+	 * Returns true if the column is in the first count entries of the list
+	 */
+	private static boolean contains(int[] list, int count, int col) {
+		for(int i = 0; i < count; i++) {
+			if(list[i] == col)
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,218 @@
+package ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Precomputed best moves for the early game, read from a file made by
+ * OpeningBookGenerator.
+ *
+ * The file is memory-mapped, so looking a position up is a binary search over
+ * the mapped bytes and never touches the heap. A position and its mirror image
+ * share one entry. The file is laid out as
+ *
+ *  int  MAGIC
+ *  int  deepest ply in the book
+ *  int  number of entries
+ *  long entries, sorted
+ *
+ * and each entry packs the position key into the top 49 bits, the best column
+ * into the next 3 and the score into the bottom 12, so sorting the entries
+ * as unsigned numbers sorts the keys.
+ */
+public class OpeningBook {
+
+	public static final String DEFAULT_FILE = "book.bin";
+
+	static final int MAGIC = 0x4334424B; //"C4BK"
+	static final int HEADER_BYTES = 12;
+
+	private static final int MOVE_SHIFT = 12;
+	private static final int KEY_SHIFT = 15;
+	private static final long SCORE_MASK = (1L << MOVE_SHIFT) - 1;
+
+	private final MappedByteBuffer entries; //null for an empty book
+	private final int maxPly;
+	private final int count;
+
+	/*
+	 * Creates a book with no positions
+	 */
+	private OpeningBook() {
+		entries = null;
+		maxPly = -1;
+		count = 0;
+	}
+
+	/**
+	 * Maps a book file into memory
+	 *
+	 * @param file the book made by OpeningBookGenerator
+	 * @throws IOException if the file cannot be read or is not a book
+	 */
+	public OpeningBook(File file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.BIG_ENDIAN);
+
+			if(channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+				throw new IOException(file + " is not an opening book");
+
+			maxPly = buffer.getInt(4);
+			count = buffer.getInt(8);
+
+			if(HEADER_BYTES + (long) count * Long.BYTES > channel.size())
+				throw new IOException(file + " is truncated");
+
+			entries = buffer;
+		}
+	}
+
+	/*
+	 * Holds the default book. The class is only loaded, and the file mapped,
+	 * the first time getDefault is called, and after that reading the field
+	 * takes no lock
+	 */
+	private static class DefaultBook {
+		static final OpeningBook BOOK = load();
+
+		private static OpeningBook load() {
+			File f = new File(DEFAULT_FILE);
+			if(f.exists()) {
+				try {
+					return new OpeningBook(f);
+				} catch(IOException ex) {
+					ex.printStackTrace();
+				}
+			}
+			return new OpeningBook();
+		}
+	}
+
+	/**
+	 * Returns the book in DEFAULT_FILE, mapped the first time it is asked for.
+	 * If there is no such file the book is empty
+	 */
+	public static OpeningBook getDefault() {
+		return DefaultBook.BOOK;
+	}
+
+	/**
+	 * Returns the book's best column for the position, or -1 if it is not in the book
+	 */
+	public int getMove(BitBoard board) {
+		long entry = find(board);
+		return entry == 0 ? -1 : decodeMove(board, entry);
+	}
+
+	/**
+	 * Returns true if the position is in the book
+	 */
+	public boolean contains(BitBoard board) {
+		return find(board) != 0;
+	}
+
+	/**
+	 * Returns the book's score for the position, as Search would score it. Only
+	 * meaningful if the position is in the book
+	 */
+	public int getScore(BitBoard board) {
+		return decodeScore(find(board));
+	}
+
+	/**
+	 * Returns the deepest ply in the book, -1 if the book is empty
+	 */
+	public int getMaxPly() {
+		return maxPly;
+	}
+
+	/**
+	 * Returns the number of positions in the book
+	 */
+	public int size() {
+		return count;
+	}
+
+	/*
+	 * Binary searches the mapped entries for the position. Returns 0 if it is not there
+	 */
+	private long find(BitBoard board) {
+		if(count == 0 || board.getMoves() > maxPly)
+			return 0;
+
+		long key = canonicalKey(board);
+		int low = 0, high = count - 1;
+
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			long entry = entries.getLong(HEADER_BYTES + mid * Long.BYTES);
+			long found = entry >>> KEY_SHIFT;
+
+			if(found < key)
+				low = mid + 1;
+			else if(found > key)
+				high = mid - 1;
+			else
+				return entry;
+		}
+
+		return 0;
+	}
+
+	/*
+	 * Returns the key shared by the position and its mirror image
+	 */
+	static long canonicalKey(BitBoard board) {
+		long key = board.key();
+		return Math.min(key, mirror(key));
+	}
+
+	/*
+	 * Packs an entry for the position. The move is stored as seen on the
+	 * position with the canonical key
+	 */
+	static long encode(BitBoard board, int move, int score) {
+		long key = board.key();
+		if(mirror(key) < key)
+			move = BitBoard.COLS - 1 - move;
+
+		return Math.min(key, mirror(key)) << KEY_SHIFT | (long) move << MOVE_SHIFT | (score & SCORE_MASK);
+	}
+
+	/*
+	 * Unpacks the column of an entry, mirroring it back if the position is the mirror image
+	 */
+	private static int decodeMove(BitBoard board, long entry) {
+		int move = (int) (entry >>> MOVE_SHIFT) & 0x7;
+		long key = board.key();
+		return mirror(key) < key ? BitBoard.COLS - 1 - move : move;
+	}
+
+	/*
+	 * Unpacks the signed score of an entry
+	 */
+	private static int decodeScore(long entry) {
+		return (int) ((entry << (64 - MOVE_SHIFT)) >> (64 - MOVE_SHIFT));
+	}
+
+	/*
+	 * Flips a key from left to right. Each column of a key takes up its own bits,
+	 * so the columns can be swapped around
+	 */
+	static long mirror(long key) {
+		long column = (1L << BitBoard.H1) - 1;
+		long result = 0;
+
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			long bits = (key >>> (col * BitBoard.H1)) & column;
+			result |= bits << ((BitBoard.COLS - 1 - col) * BitBoard.H1);
+		}
+
+		return result;
+	}
+}
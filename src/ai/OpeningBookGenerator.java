@@ -0,0 +1,176 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the opening book offline by solving every position up to a given ply
+ * with perfect play and writing the results in the format OpeningBook reads.
+ * Solving the earliest positions takes a long time, hours for a full book.
+ *
+ * Given a time per position the positions are only searched for that long
+ * instead. That makes a quick heuristic book for trying things out, whose
+ * moves and scores are the search's best guess rather than solved.
+ *
+ * Usage: java ai.OpeningBookGenerator [plies] [millis per position, 0 to solve] [threads] [file]
+ */
+public class OpeningBookGenerator {
+
+	//Positions are kept as 3 bits per move below a 6 bit move count
+	public static final int MAX_PLIES = 19;
+
+	private final int plies; //Positions with at most this many discs are searched
+	private final long millis; //Time to search each position for, 0 to search until solved
+	private final int threads;
+
+	private final Set<Long> seen = new HashSet<>(); //Canonical keys of the positions found so far
+	private long[] positions = new long[1024]; //The positions found, as their move sequences
+	private int count = 0;
+
+	/**
+	 * @param plies positions with at most this many discs are searched, up to MAX_PLIES
+	 * @param millis time to search each position for, 0 to search until solved
+	 * @param threads number of positions searched at once
+	 */
+	public OpeningBookGenerator(int plies, long millis, int threads) {
+		this.plies = Math.min(plies, MAX_PLIES);
+		this.millis = millis;
+		this.threads = Math.max(1, threads);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int plies = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		String file = args.length > 3 ? args[3] : OpeningBook.DEFAULT_FILE;
+
+		new OpeningBookGenerator(plies, millis, threads).generate(file);
+	}
+
+	/**
+	 * Finds and searches every position and writes the book
+	 *
+	 * @param file where to write the book
+	 */
+	public void generate(String file) throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+
+		collect(new BitBoard(), 0L);
+		System.out.println(count + " positions with up to " + plies + " discs, "
+				+ (millis == 0 ? "solving each one" : "searching each for " + millis + " ms (heuristic, not solved)"));
+
+		long[] entries = searchAll();
+		write(file, entries);
+
+		System.out.println("Wrote " + file + " in " + (System.currentTimeMillis() - start) / 1000 + " s");
+	}
+
+	/*
+	 * Walks every game up to the ply limit and keeps one copy of each position,
+	 * counting mirror images as the same. Games that are already won are not
+	 * added since there is nothing left to look up. Each position is kept as its
+	 * columns packed 3 bits per move, which is enough to play it again later
+	 */
+	private void collect(BitBoard board, long sequence) {
+		if(!seen.add(OpeningBook.canonicalKey(board)))
+			return;
+
+		if(count == positions.length)
+			positions = Arrays.copyOf(positions, count * 2);
+		positions[count++] = sequence | (long) board.getMoves() << 58;
+
+		if(board.getMoves() >= plies)
+			return;
+
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(board.canPlay(col) && !board.isWinningMove(col)) {
+				long next = sequence | (long) col << (3 * board.getMoves());
+				board.play(col);
+				collect(board, next);
+				board.undo();
+			}
+		}
+	}
+
+	/*
+	 * Searches every collected position, spread over the threads. Each thread has
+	 * its own search and transposition table. With no time limit the positions
+	 * are solved exactly instead
+	 */
+	private long[] searchAll() throws InterruptedException {
+		long[] entries = new long[count];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		int tableMegabytes = Math.max(Search.DEFAULT_TABLE_MB, 256 / threads);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for(int t = 0; t < threads; t++) {
+			pool.execute(() -> {
+				Search search = new Search(new TranspositionTable(tableMegabytes));
+				Solver solver = new Solver(new TranspositionTable(tableMegabytes));
+				BitBoard board = new BitBoard();
+
+				for(int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+					replay(board, positions[i]);
+
+					if(millis == 0) {
+						int move = solver.bestMove(board, 0);
+						entries[i] = OpeningBook.encode(board, move, Solver.toSearchScore(solver.getScore(), board.getMoves()));
+					} else {
+						search.setPosition(board);
+						search.search(Search.MAX_DEPTH, millis);
+						entries[i] = OpeningBook.encode(board, search.getBestMove(), search.getScore());
+					}
+
+					int finished = done.incrementAndGet();
+					if(finished % 1000 == 0)
+						System.out.println(finished + " / " + count);
+				}
+			});
+		}
+
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		//Sorting on the unsigned value sorts on the key
+		for(int i = 0; i < entries.length; i++)
+			entries[i] ^= Long.MIN_VALUE;
+		Arrays.sort(entries);
+		for(int i = 0; i < entries.length; i++)
+			entries[i] ^= Long.MIN_VALUE;
+
+		return entries;
+	}
+
+	/*
+	 * Sets the board to the position stored by collect
+	 */
+	private static void replay(BitBoard board, long position) {
+		int moves = (int) (position >>> 58);
+		board.clear(1);
+		for(int i = 0; i < moves; i++)
+			board.play((int) (position >>> (3 * i)) & 0x7);
+	}
+
+	/*
+	 * Writes the header and the sorted entries
+	 */
+	private void write(String file, long[] entries) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeInt(plies);
+			out.writeInt(entries.length);
+			for(long entry : entries)
+				out.writeLong(entry);
+		}
+	}
+}
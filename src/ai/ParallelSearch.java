@@ -0,0 +1,189 @@
+package ai;
+
+/**
+ * Lazy SMP: several threads run the same iterative deepening search on the
+ * same position and share one transposition table. The helpers do not split
+ * the work between them, they just fill the table with results the other
+ * threads can use, and half of them search one depth ahead so they reach
+ * different parts of the tree first.
+ *
+ * The calling thread runs the main search and its result is the one used,
+ * unless a helper finished a deeper depth. Helpers are stopped as soon as the
+ * main search returns.
+ */
+public class ParallelSearch {
+
+	private final TranspositionTable table;
+	private final Search[] searches; //Index 0 is the main search, the rest are helpers
+
+	private Search result; //The search whose result was used last
+
+	/**
+	 * @param threads number of threads to search with, at least 1
+	 * @param tableMegabytes size of the shared transposition table in MB
+	 */
+	public ParallelSearch(int threads, int tableMegabytes) {
+		table = new TranspositionTable(tableMegabytes);
+		searches = new Search[Math.max(1, threads)];
+
+		for(int i = 0; i < searches.length; i++) {
+			searches[i] = new Search(table);
+			searches[i].setDepthOffset(i % 2);
+		}
+		result = searches[0];
+	}
+
+	/**
+	 * Sets the position to search from
+	 *
+	 * @param board the board with row 0 at the top, as the game engine stores it
+	 * @param player the player to find a move for
+	 */
+	public void setPosition(int[][] board, int player) {
+		for(Search search : searches)
+			search.setPosition(board, player);
+	}
+
+	/**
+	 * Sets the position to search from
+	 *
+	 * @param board the position, it is copied so the caller can keep using it
+	 */
+	public void setPosition(BitBoard board) {
+		for(Search search : searches)
+			search.setPosition(board);
+	}
+
+	/**
+	 * Searches with every thread until the depth is reached or the time runs out
+	 *
+	 * @param maxDepth the deepest the search is allowed to go
+	 * @param millis how long the search may take, 0 for no limit
+	 * @return the score of the best move, also available from getScore
+	 */
+	public int search(int maxDepth, long millis) {
+		table.newSearch();
+
+		//The helpers were stopped at the end of the last search. The main search
+		//is not cleared, so a stop that came in before this still counts
+		Thread[] helpers = new Thread[searches.length - 1];
+		for(int i = 0; i < helpers.length; i++) {
+			Search helper = searches[i + 1];
+			helper.resetStop();
+			helpers[i] = new Thread(() -> helper.iterate(maxDepth, millis), "search-helper-" + (i + 1));
+			helpers[i].setDaemon(true);
+			helpers[i].start();
+		}
+
+		Search main = searches[0];
+		main.iterate(maxDepth, millis);
+
+		for(int i = 0; i < helpers.length; i++)
+			searches[i + 1].stop();
+		for(Thread helper : helpers) {
+			try {
+				helper.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		//Using a helper's move if it got further than the main search
+		result = main;
+		for(Search helper : searches) {
+			if(helper.getDepth() > result.getDepth() && helper.getBestMove() != -1)
+				result = helper;
+		}
+
+		return result.getScore();
+	}
+
+	/**
+	 * Stops a search running on another thread. Like Search's stop, it lasts
+	 * until resetStop is called
+	 */
+	public void stop() {
+		for(Search search : searches)
+			search.stop();
+	}
+
+	/**
+	 * Clears a stop, so the next search runs until its depth or time is up
+	 */
+	public void resetStop() {
+		for(Search search : searches)
+			search.resetStop();
+	}
+
+	/**
+	 * Returns the best column found by the last search, -1 if there was no legal move
+	 */
+	public int getBestMove() {
+		return result.getBestMove();
+	}
+
+	/**
+	 * Returns the score of the best column found by the last search
+	 */
+	public int getScore() {
+		return result.getScore();
+	}
+
+	/**
+	 * Returns the deepest depth the last search finished
+	 */
+	public int getDepth() {
+		return result.getDepth();
+	}
+
+	/**
+	 * Returns the number of positions visited by all threads in the last search
+	 */
+	public long getNodes() {
+		long nodes = 0;
+		for(Search search : searches)
+			nodes += search.getNodes();
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of transposition table lookups by all threads in the last search
+	 */
+	public long getTableProbes() {
+		long probes = 0;
+		for(Search search : searches)
+			probes += search.getTableProbes();
+		return probes;
+	}
+
+	/**
+	 * Returns the number of lookups by all threads in the last search that found the position
+	 */
+	public long getTableHits() {
+		long hits = 0;
+		for(Search search : searches)
+			hits += search.getTableHits();
+		return hits;
+	}
+
+	/**
+	 * Returns the number of threads searching
+	 */
+	public int getThreads() {
+		return searches.length;
+	}
+
+	/**
+	 * Returns the main search, for its move ordering and branching factor
+	 */
+	public Search getMainSearch() {
+		return searches[0];
+	}
+
+	/**
+	 * Returns the transposition table shared by the threads
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+}
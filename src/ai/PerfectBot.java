@@ -0,0 +1,130 @@
+package ai;
+
+import engine.BoardSnapshot;
+import engine.Move;
+import metrics.Metrics;
+import metrics.MoveEvent;
+import metrics.SearchMetrics;
+
+public class PerfectBot extends Player implements AI {
+
+	public static final long DEFAULT_MOVE_MILLIS = 2000;
+
+	private static final SearchMetrics METRICS = Metrics.search("PerfectBot");
+
+	private final Solver solver;
+	private final Search search; //Used when the position cannot be solved in time
+	private final long moveMillis; //How long the bot may think about each move
+	private volatile boolean stopRequested = false; //Set by another thread to cut the current move short
+
+	//Constructors
+	public PerfectBot(int playerNum) {
+		this(playerNum, DEFAULT_MOVE_MILLIS, Search.DEFAULT_TABLE_MB);
+	}
+	public PerfectBot(int playerNum, long moveMillis, int tableMegabytes) {
+		super(playerNum, "Perfect", "Computer");
+		this.moveMillis = moveMillis;
+		this.solver = new Solver(new TranspositionTable(tableMegabytes));
+		this.search = new Search(new TranspositionTable(tableMegabytes));
+	}
+	public PerfectBot(int playerNum, String name, String bot) {
+		super(playerNum, name, bot);
+		this.moveMillis = DEFAULT_MOVE_MILLIS;
+		this.solver = new Solver();
+		this.search = new Search();
+	}
+
+	/**
+	 * Returns the move that wins the fastest, draws, or loses the slowest, found
+	 * by solving the position. If the position is too early in the game to solve
+	 * in time, the best move from an ordinary search is played instead
+	 *
+	 * @param board the current state of the game
+	 * @param lastMove the last move that that has been played in the game, null if its the start
+	 * @return int - the best move
+	 */
+	public int move(int[][] board, Move lastMove) {
+		return move(new BitBoard(board, PLAYER), lastMove);
+	}
+
+	/**
+	 * Same as move with an array, the snapshot's discs are copied straight
+	 * into the bot's board
+	 */
+	@Override
+	public int move(BoardSnapshot board, Move lastMove) {
+		return move(new BitBoard(board, PLAYER), lastMove);
+	}
+
+	/*
+	 * Times the move for the flight recorder
+	 */
+	private int move(BitBoard position, Move lastMove) {
+		MoveEvent event = new MoveEvent();
+		event.begin();
+		int col = chooseMove(position, lastMove, event);
+		event.finish("PerfectBot", PLAYER, col);
+		return col;
+	}
+
+	/*
+	 * Picks the move, filling in the event with what the search found
+	 */
+	private int chooseMove(BitBoard position, Move lastMove, MoveEvent event) {
+
+		//If the game just started
+		if(lastMove == null)
+			return 3;
+
+		//If the position has been worked out ahead of time
+		int bookMove = OpeningBook.getDefault().getMove(position);
+		if(bookMove != -1)
+			return bookMove;
+
+		//Leaving a quarter of the time for the search in case the solver runs out
+		long start = System.nanoTime();
+		int col = solver.bestMove(position, moveMillis - moveMillis / 4);
+		if(col != -1) {
+			//A solved position is searched to the end of the game
+			METRICS.recordMove(System.nanoTime() - start, solver.getNodes(), BitBoard.SIZE - position.getMoves());
+			event.setSearch(BitBoard.SIZE - position.getMoves(), solver.getNodes(), solver.getScore());
+			return col;
+		}
+
+		//A stopped move only looks one disc ahead, which is enough for a legal move
+		search.setPosition(position);
+		search.search(stopRequested ? 1 : Search.MAX_DEPTH, moveMillis / 4);
+
+		METRICS.recordMove(System.nanoTime() - start, solver.getNodes() + search.getNodes(), search.getDepth());
+		METRICS.recordBranchingFactor(search.getBranchingFactor());
+		METRICS.recordTable(search.getTableProbes(), search.getTableHits());
+		METRICS.recordCutoffs(search.getNodes(), search.getOrdering().getCutoffs(), search.getOrdering().getFirstMoveCutoffs());
+		event.setSearch(search.getDepth(), solver.getNodes() + search.getNodes(), search.getScore());
+		return search.getBestMove();
+	}
+
+	/**
+	 * Stops the solver and the search. A position that was not solved is played
+	 * from the search, which returns the best move from the last depth it finished
+	 */
+	@Override
+	public void stop() {
+		stopRequested = true;
+		solver.stop();
+		search.stop();
+	}
+
+	@Override
+	public void resetStop() {
+		stopRequested = false;
+		solver.resetStop();
+		search.resetStop();
+	}
+
+	/**
+	 * Returns the solver, which reports the score, nodes and time of the last move
+	 */
+	public Solver getSolver() {
+		return solver;
+	}
+}
@@ -0,0 +1,196 @@
+package ai;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts every move sequence of a given length from a position, the same way
+ * HardBot's game tree is grown: a position where the last move won, or where
+ * the board is full, gets no children. The counts are exact, so any change to
+ * how moves are made or wins are found can be checked against them, and the
+ * time taken measures how fast the board is.
+ *
+ * Usage: java ai.Perft depth [moves] [--parallel] [--divide]
+ *
+ * where moves are the columns played from the start, like 3342. Each depth
+ * from 1 up is counted and timed. With --divide the last depth is also split
+ * up by the first column played.
+ */
+public class Perft {
+
+	private static final int SPLIT_DEPTH = 5; //Parallel tasks stop splitting with this many plies left
+	private static final String USAGE = "Usage: java ai.Perft depth [moves] [--parallel] [--divide]";
+
+	private Perft() {
+	}
+
+	public static void main(String[] args) {
+		if(args.length < 1) {
+			System.out.println(USAGE);
+			return;
+		}
+
+		int depth;
+		try {
+			depth = Integer.parseInt(args[0]);
+		} catch(NumberFormatException e) {
+			depth = -1;
+		}
+		if(depth < 0)
+			exit("The depth must be a whole number, 0 or more: " + args[0]);
+		String moves = "";
+		boolean parallel = false, divide = false;
+		for(int i = 1; i < args.length; i++) {
+			if(args[i].equals("--parallel"))
+				parallel = true;
+			else if(args[i].equals("--divide"))
+				divide = true;
+			else
+				moves = args[i];
+		}
+
+		//Checking each move before it is played, a bad one would corrupt the board
+		BitBoard board = new BitBoard();
+		for(int i = 0; i < moves.length(); i++) {
+			int col = moves.charAt(i) - '0';
+			if(col < 0 || col >= BitBoard.COLS)
+				exit("Moves are columns from 0 to " + (BitBoard.COLS - 1) + ", not '" + moves.charAt(i) + "'");
+			if(!board.canPlay(col))
+				exit("Move " + (i + 1) + " of \"" + moves + "\" is in column " + col + ", which is full");
+			board.play(col);
+		}
+
+		ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : null;
+		System.out.println((parallel ? "Fork-join on " + pool.getParallelism() + " threads" : "Single-threaded")
+				+ ", from \"" + moves + "\"");
+
+		for(int d = 1; d <= depth; d++) {
+			long start = System.nanoTime();
+			long nodes = parallel ? countParallel(board, d, pool) : count(board, d);
+			long nanos = Math.max(1, System.nanoTime() - start);
+
+			System.out.println(String.format("ply %2d  %,18d  %9.3f s  %,15d nodes/s", d, nodes, nanos / 1e9,
+					(long) (nodes * 1e9 / nanos)));
+		}
+
+		if(divide) {
+			long[] split = divide(board, depth);
+			for(int col = 0; col < BitBoard.COLS; col++) {
+				if(board.canPlay(col))
+					System.out.println(String.format("  %d: %,d", col, split[col]));
+			}
+		}
+	}
+
+	/*
+	 * Prints what was wrong with the arguments and how to use the program, then exits
+	 */
+	private static void exit(String problem) {
+		System.out.println(problem);
+		System.out.println(USAGE);
+		System.exit(1);
+	}
+
+	/**
+	 * Returns the number of move sequences of the given length from the position
+	 *
+	 * @param board the position, it is left as it was
+	 * @param depth the number of moves in each sequence
+	 */
+	public static long count(BitBoard board, int depth) {
+		if(depth == 0)
+			return 1;
+		if(board.lastMoveWon() || board.isFull())
+			return 0;
+
+		//Every legal move is a sequence, no need to play them
+		if(depth == 1)
+			return Long.bitCount(board.legalMoves());
+
+		long nodes = 0;
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(board.canPlay(col)) {
+				board.play(col);
+				nodes += count(board, depth - 1);
+				board.undo();
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Same as count, but the top of the tree is split into fork-join tasks,
+	 * each with its own copy of the board
+	 *
+	 * @param board the position, it is not changed
+	 * @param depth the number of moves in each sequence
+	 * @param pool the pool to run the tasks in
+	 */
+	public static long countParallel(BitBoard board, int depth, ForkJoinPool pool) {
+		BitBoard copy = new BitBoard();
+		copy.copyFrom(board);
+		return pool.invoke(new CountTask(copy, depth));
+	}
+
+	/**
+	 * Returns the count for each first column, 0 for columns that are full
+	 *
+	 * @param board the position, it is left as it was
+	 * @param depth the number of moves in each sequence, counting the first
+	 */
+	public static long[] divide(BitBoard board, int depth) {
+		long[] split = new long[BitBoard.COLS];
+		if(depth == 0 || board.lastMoveWon() || board.isFull())
+			return split;
+
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(board.canPlay(col)) {
+				board.play(col);
+				split[col] = count(board, depth - 1);
+				board.undo();
+			}
+		}
+		return split;
+	}
+
+	/*
+	 * Counts one subtree. Near the bottom it counts on its own board, higher up
+	 * it forks a task for each column
+	 */
+	private static class CountTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BitBoard board; //Owned by this task
+		private final int depth;
+
+		CountTask(BitBoard board, int depth) {
+			this.board = board;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Long compute() {
+			if(depth <= SPLIT_DEPTH || board.lastMoveWon() || board.isFull())
+				return count(board, depth);
+
+			CountTask[] tasks = new CountTask[BitBoard.COLS];
+			for(int col = 0; col < BitBoard.COLS; col++) {
+				if(board.canPlay(col)) {
+					BitBoard child = new BitBoard();
+					child.copyFrom(board);
+					child.play(col);
+					tasks[col] = new CountTask(child, depth - 1);
+					tasks[col].fork();
+				}
+			}
+
+			long nodes = 0;
+			for(CountTask task : tasks) {
+				if(task != null)
+					nodes += task.join();
+			}
+			return nodes;
+		}
+	}
+}
@@ -41,4 +41,11 @@ public class Player {
 		return botName;
 	}
 
+	/**
+	 * Called when the player is taken out of the game, so bots can stop any
+	 * thinking they do in the background
+	 */
+	public void leaveGame() {
+	}
+
 }
@@ -0,0 +1,172 @@
+package ai;
+
+/**
+ * Searches on the opponent's time. After the bot moves, a background thread
+ * searches the position after each reply the opponent could make, the most
+ * likely one first, giving every reply a little more time on each pass. The
+ * best answer found for each reply is kept, and everything the thread searches
+ * also ends up in the shared transposition table.
+ *
+ * When the opponent's move comes in the bot stops the thread and, if the reply
+ * was searched deep enough, plays the stored answer straight away.
+ */
+public class Ponderer {
+
+	private static final long FIRST_SLICE_MILLIS = 20; //Time for each reply on the first pass
+
+	private final Search search;
+	private final BitBoard position = new BitBoard(); //The position after the bot's move
+
+	//The answer found for each reply, indexed by the reply's column
+	private final long[] keys = new long[BitBoard.COLS];
+	private final int[] answers = new int[BitBoard.COLS];
+	private final int[] depths = new int[BitBoard.COLS];
+
+	private Thread thread = null;
+	private volatile boolean stopRequested = false;
+
+	private long hits = 0; //Replies that had an answer ready
+	private long misses = 0; //Replies that had to be searched normally
+
+	/**
+	 * @param table the transposition table of the bot's own search, so the work
+	 *              done here speeds up the bot's next search
+	 */
+	public Ponderer(TranspositionTable table) {
+		search = new Search(table);
+	}
+
+	/**
+	 * Starts thinking about the opponent's replies. Any earlier pondering is stopped
+	 *
+	 * @param afterMove the position after the bot's move, with the opponent to move
+	 * @param maxMillis how long to ponder for at most
+	 */
+	public synchronized void start(BitBoard afterMove, long maxMillis) {
+		stop();
+
+		position.copyFrom(afterMove);
+		for(int col = 0; col < BitBoard.COLS; col++)
+			depths[col] = 0;
+
+		stopRequested = false;
+		search.resetStop();
+		thread = new Thread(() -> ponder(maxMillis), "ponder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops pondering and waits for the thread to finish. The search stays
+	 * stopped until the next start, so a search the thread begins after this
+	 * returns straight away
+	 */
+	public synchronized void stop() {
+		if(thread == null)
+			return;
+
+		stopRequested = true;
+		search.stop();
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Returns the stored answer for the position, or -1 if the position was not
+	 * pondered to at least the given depth. Pondering must be stopped first
+	 *
+	 * @param board the position after the opponent's reply
+	 * @param minDepth how deep the answer must have been searched
+	 */
+	public synchronized int getMove(BitBoard board, int minDepth) {
+		long key = board.key();
+
+		for(int col = 0; col < BitBoard.COLS; col++) {
+			if(depths[col] > 0 && keys[col] == key) {
+				if(depths[col] >= minDepth) {
+					hits++;
+					return answers[col];
+				}
+				break;
+			}
+		}
+
+		misses++;
+		return -1;
+	}
+
+	/**
+	 * Returns the number of opponent moves that had an answer ready
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of opponent moves that had to be searched normally
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/*
+	 * Runs on the background thread. Guesses the opponent's reply with a short
+	 * search, then goes over the replies with that one first, doubling the time
+	 * each gets on every pass
+	 */
+	private void ponder(long maxMillis) {
+		long end = System.currentTimeMillis() + maxMillis;
+		BitBoard board = new BitBoard();
+		board.copyFrom(position);
+
+		search.setPosition(board);
+		search.search(Search.MAX_DEPTH, FIRST_SLICE_MILLIS);
+		int predicted = search.getBestMove();
+
+		int[] replies = new int[BitBoard.COLS];
+		int count = 0;
+		if(predicted != -1)
+			replies[count++] = predicted;
+		for(int col : MoveOrdering.CENTER_FIRST) {
+			if(col != predicted && board.canPlay(col))
+				replies[count++] = col;
+		}
+
+		long slice = FIRST_SLICE_MILLIS;
+		boolean improved = true;
+
+		while(improved && !stopRequested && System.currentTimeMillis() < end) {
+			improved = false;
+
+			for(int i = 0; i < count && !stopRequested; i++) {
+				int reply = replies[i];
+
+				//Nothing to answer if the reply ends the game
+				if(board.isWinningMove(reply))
+					continue;
+				board.play(reply);
+				if(board.isFull()) {
+					board.undo();
+					continue;
+				}
+
+				search.setPosition(board);
+				search.search(Search.MAX_DEPTH, Math.min(slice, Math.max(1, end - System.currentTimeMillis())));
+
+				if(search.getBestMove() != -1 && search.getDepth() > depths[reply]) {
+					keys[reply] = board.key();
+					answers[reply] = search.getBestMove();
+					depths[reply] = search.getDepth();
+					improved = true;
+				}
+				board.undo();
+			}
+
+			slice *= 2;
+		}
+	}
+}
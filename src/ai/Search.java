@@ -0,0 +1,434 @@
+package ai;
+
+import metrics.SearchDepthEvent;
+
+/**
+ * Negamax search with alpha-beta pruning over a BitBoard.
+ *
+ * Scores are always from the point of view of the player to move. A win is
+ * worth WIN_SCORE minus the number of discs played from the root to get it,
+ * so quicker wins and slower losses are preferred. Positions at the search
+ * horizon are scored by a ThreatEvaluator.
+ *
+ * Results are kept in a transposition table so a position reached again
+ * through a different order of moves is not searched twice.
+ */
+public class Search {
+
+	public static final int WIN_SCORE = 1000;
+	public static final int INFINITY = WIN_SCORE + 1;
+
+	public static final int DEFAULT_TABLE_MB = 16;
+	public static final int MAX_DEPTH = BitBoard.SIZE;
+
+	private static final int CLOCK_MASK = 1023; //The clock is checked every 1024 positions
+
+	//Scores past this are wins or losses, and are stored relative to the position
+	private static final int WIN_BOUND = WIN_SCORE - BitBoard.SIZE - 1;
+
+	private final BitBoard board = new BitBoard();
+	private final TranspositionTable table;
+	private final MoveOrdering ordering = new MoveOrdering();
+	private final ThreatEvaluator evaluator = new ThreatEvaluator();
+
+	private int bestMove = -1; //Best column found by the last search
+	private int score = 0; //Score of the best column
+	private long nodes = 0; //Positions visited by the last search
+	private int completedDepth = 0; //Deepest depth the last search finished
+	private long iterationNodes = 0; //Positions visited by the last finished depth
+	private long previousIterationNodes = 0; //Positions visited by the depth before that
+	private long tableProbes = 0; //Transposition table lookups in the last search
+	private long tableHits = 0; //Lookups that found the position
+
+	private int rootMove = -1; //Best column of the depth being searched
+	private long deadline = 0; //System.nanoTime the search has to stop at, 0 for none
+	private boolean stopped = false; //Set once the deadline has passed or the search was stopped
+	private volatile boolean aborted = false; //Set by another thread to stop the search, stays set until resetStop
+	private int depthOffset = 0; //Helpers of a parallel search start this many depths deeper
+
+	public Search() {
+		this(new TranspositionTable(DEFAULT_TABLE_MB));
+	}
+
+	/**
+	 * Creates a search that stores its results in the given table
+	 *
+	 * @param table the transposition table to use
+	 */
+	public Search(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Sets the position to search from
+	 *
+	 * @param board the board with row 0 at the top, as the game engine stores it
+	 * @param player the player to find a move for
+	 */
+	public void setPosition(int[][] board, int player) {
+		this.board.set(board, player);
+	}
+
+	/**
+	 * Sets the position to search from
+	 *
+	 * @param board the position, it is copied so the caller can keep using it
+	 */
+	public void setPosition(BitBoard board) {
+		this.board.copyFrom(board);
+	}
+
+	/**
+	 * Searches the current position to a fixed depth
+	 *
+	 * @param depth how many discs to look ahead
+	 * @return the score of the best move, also available from getScore
+	 */
+	public int search(int depth) {
+		return search(depth, 0);
+	}
+
+	/**
+	 * Searches one disc deeper at a time until the depth is reached or the time
+	 * runs out. The result always comes from the last depth that was searched
+	 * completely, so stopping early never leaves the search without a move
+	 *
+	 * @param maxDepth the deepest the search is allowed to go
+	 * @param millis how long the search may take, 0 for no limit
+	 * @return the score of the best move, also available from getScore
+	 */
+	public int search(int maxDepth, long millis) {
+		table.newSearch();
+		return iterate(maxDepth, millis);
+	}
+
+	/**
+	 * Stops a search running on another thread. The search returns its result
+	 * from the last depth it finished, with no best move if it did not finish one.
+	 * The stop lasts until resetStop is called, so every search started after it
+	 * returns straight away too, and one call is enough to stop a thread that
+	 * runs several searches in a row
+	 */
+	public void stop() {
+		aborted = true;
+	}
+
+	/*
+	 * Runs the iterative deepening loop. A stop requested before this is called
+	 * stops it straight away, which lets a parallel search start its helpers
+	 * without racing them
+	 */
+	int iterate(int maxDepth, long millis) {
+		nodes = 0;
+		bestMove = -1;
+		score = -INFINITY;
+		completedDepth = 0;
+		stopped = false;
+		deadline = millis > 0 ? System.nanoTime() + millis * 1_000_000L : 0;
+		iterationNodes = 0;
+		previousIterationNodes = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		ordering.newSearch();
+		evaluator.set(board);
+
+		int empty = BitBoard.SIZE - board.getMoves();
+
+		for(int depth = 1 + depthOffset; depth <= maxDepth; depth++) {
+			SearchDepthEvent event = new SearchDepthEvent();
+			event.begin();
+			long before = nodes;
+			int value = searchRoot(depth);
+
+			if(stopped)
+				break;
+
+			previousIterationNodes = iterationNodes;
+			iterationNodes = nodes - before;
+
+			score = value;
+			bestMove = rootMove;
+			completedDepth = depth;
+
+			event.end();
+			if(event.shouldCommit()) {
+				event.depth = depth;
+				event.bestMove = bestMove;
+				event.score = score;
+				event.nodes = iterationNodes;
+				event.discs = board.getMoves();
+				event.commit();
+			}
+
+			//Nothing changes once the game is decided or every disc is played
+			if(Math.abs(score) > WIN_BOUND || depth >= empty)
+				break;
+		}
+
+		return score;
+	}
+
+	/*
+	 * Searches every column of the root position to the given depth. The best
+	 * column of the previous depth is searched first, then the rest center first
+	 */
+	private int searchRoot(int depth) {
+		int alpha = -INFINITY, beta = INFINITY;
+		int best = -INFINITY;
+		rootMove = -1;
+
+		for(int i = -1; i < BitBoard.COLS; i++) {
+			int col = i < 0 ? bestMove : MoveOrdering.CENTER_FIRST[i];
+			if(col == -1 || (i >= 0 && col == bestMove) || !board.canPlay(col))
+				continue;
+
+			int value;
+			if(board.isWinningMove(col)) {
+				value = WIN_SCORE - 1;
+			} else {
+				play(col);
+				value = -negamax(depth - 1, -beta, -alpha, 1);
+				undo(col);
+			}
+
+			if(stopped)
+				return best;
+
+			if(value > best) {
+				best = value;
+				rootMove = col;
+			}
+			if(value > alpha)
+				alpha = value;
+		}
+
+		if(rootMove != -1)
+			table.store(board.key(), depth, toTable(best, 0), TranspositionTable.EXACT, rootMove);
+
+		return best;
+	}
+
+	/*
+	 * Returns the score of the current position for the player to move. The
+	 * move that led here is known not to have won the game
+	 */
+	private int negamax(int depth, int alpha, int beta, int ply) {
+		nodes++;
+
+		//Checking the clock every so often, but only once there is a move to fall back on
+		if((nodes & CLOCK_MASK) == 0 && (aborted
+				|| (completedDepth > 0 && deadline != 0 && System.nanoTime() - deadline > 0)))
+			stopped = true;
+		if(stopped)
+			return 0;
+
+		if(board.isFull())
+			return 0;
+
+		//Taking a win right away is always best
+		if(board.canWinNext())
+			return WIN_SCORE - ply - 1;
+
+		if(depth <= 0)
+			return evaluator.evaluate(board.getMoves(), board.getPlayer());
+
+		//No reply can do better than winning on the move after next
+		int max = WIN_SCORE - ply - 2;
+		if(beta > max) {
+			beta = max;
+			if(alpha >= beta)
+				return beta;
+		}
+
+		//Looking up the result of an earlier visit to this position
+		long key = board.key();
+		long entry = table.probe(key);
+		int hashMove = TranspositionTable.NO_MOVE;
+		tableProbes++;
+		if(entry != 0) {
+			tableHits++;
+			hashMove = TranspositionTable.getMove(entry);
+
+			if(TranspositionTable.getDepth(entry) >= depth) {
+				int stored = fromTable(TranspositionTable.getScore(entry), ply);
+				switch(TranspositionTable.getFlag(entry)) {
+				case TranspositionTable.EXACT:
+					return stored;
+				case TranspositionTable.LOWER:
+					if(stored > alpha)
+						alpha = stored;
+					break;
+				case TranspositionTable.UPPER:
+					if(stored < beta)
+						beta = stored;
+					break;
+				}
+				if(alpha >= beta)
+					return stored;
+			}
+		}
+
+		int alphaOrig = alpha;
+		int best = -INFINITY, bestCol = TranspositionTable.NO_MOVE;
+
+		int count = ordering.order(board, ply, hashMove);
+		int[] moves = ordering.getMoves(ply);
+
+		for(int i = 0; i < count; i++) {
+			int col = moves[i];
+
+			play(col);
+			int value = -negamax(depth - 1, -beta, -alpha, ply + 1);
+			undo(col);
+
+			//The score of an unfinished search is meaningless and must not be stored
+			if(stopped)
+				return 0;
+
+			if(value > best) {
+				best = value;
+				bestCol = col;
+			}
+			if(value > alpha)
+				alpha = value;
+			if(alpha >= beta) {
+				ordering.cutoff(board, col, ply, depth, i);
+				break;
+			}
+		}
+
+		int flag;
+		if(best <= alphaOrig)
+			flag = TranspositionTable.UPPER;
+		else if(best >= beta)
+			flag = TranspositionTable.LOWER;
+		else
+			flag = TranspositionTable.EXACT;
+		table.store(key, depth, toTable(best, ply), flag, bestCol);
+
+		return best;
+	}
+
+	/*
+	 * Plays a column on the board and keeps the evaluator up to date
+	 */
+	private void play(int col) {
+		evaluator.play(col * BitBoard.H1 + board.getHeight(col), board.getPlayer() - 1);
+		board.play(col);
+	}
+
+	/*
+	 * Takes back the column played last and keeps the evaluator up to date
+	 */
+	private void undo(int col) {
+		board.undo();
+		evaluator.undo(col * BitBoard.H1 + board.getHeight(col), board.getPlayer() - 1);
+	}
+
+	/*
+	 * Converts a score to be stored in the table. Wins and losses are counted
+	 * from the stored position instead of the root, so they stay correct when the
+	 * position is reached at a different ply
+	 */
+	private static int toTable(int score, int ply) {
+		if(score > WIN_BOUND)
+			return score + ply;
+		if(score < -WIN_BOUND)
+			return score - ply;
+		return score;
+	}
+
+	/*
+	 * Converts a score read from the table back to be relative to the root
+	 */
+	private static int fromTable(int score, int ply) {
+		if(score > WIN_BOUND)
+			return score - ply;
+		if(score < -WIN_BOUND)
+			return score + ply;
+		return score;
+	}
+
+	/*
+	 * Makes this search a helper of a parallel search, which skips ahead the
+	 * given number of depths so the threads do not all search the same tree
+	 */
+	void setDepthOffset(int depthOffset) {
+		this.depthOffset = depthOffset;
+	}
+
+	/**
+	 * Clears a stop, so the next search runs until its depth or time is up.
+	 * Called by whoever owns the search before it starts a new piece of work
+	 */
+	public void resetStop() {
+		aborted = false;
+	}
+
+	/**
+	 * Returns the transposition table used by this search
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns the best column found by the last search, -1 if there was no legal move
+	 */
+	public int getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	 * Returns the score of the best column found by the last search
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the deepest depth the last search finished
+	 */
+	public int getDepth() {
+		return completedDepth;
+	}
+
+	/**
+	 * Returns how many times more positions the last finished depth needed than
+	 * the one before it, which is how many columns the search really had to try
+	 * per position. 0 if fewer than two depths finished
+	 */
+	public double getBranchingFactor() {
+		return previousIterationNodes == 0 ? 0 : (double) iterationNodes / previousIterationNodes;
+	}
+
+	/**
+	 * Returns the move ordering, which counts how often the first move tried
+	 * caused a cutoff
+	 */
+	public MoveOrdering getOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Returns the number of positions visited by the last search
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of transposition table lookups in the last search
+	 */
+	public long getTableProbes() {
+		return tableProbes;
+	}
+
+	/**
+	 * Returns the number of transposition table lookups in the last search that
+	 * found the position
+	 */
+	public long getTableHits() {
+		return tableHits;
+	}
+}
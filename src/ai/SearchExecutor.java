@@ -0,0 +1,96 @@
+package ai;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import engine.BoardSnapshot;
+import engine.Move;
+
+/**
+ * Works out bots' moves on a thread of its own, so whoever asks for a move can
+ * get on with other things, like keeping the window painted, until it is ready.
+ *
+ * Each request gets a future for the column. Cancelling the future calls the
+ * bot's stop, and a request that has not started yet is skipped. A request can
+ * also be given a deadline, after which the bot is stopped and plays the best
+ * move it has. Stopping is up to the bot, so a bot that ignores it finishes its
+ * move as usual and the result is thrown away if the future was cancelled.
+ * A bot's stop lasts until its resetStop, which is called just before each
+ * move, so the bot is only stopped once and a stop that comes in as the move
+ * starts is not lost.
+ *
+ * Moves are worked out one at a time, in the order they were asked for.
+ */
+public class SearchExecutor {
+
+	private final ExecutorService executor; //Runs the moves
+	private final ScheduledExecutorService timer; //Stops moves that pass their deadline
+
+	public SearchExecutor() {
+		executor = Executors.newSingleThreadExecutor(task -> daemon(task, "ai-search"));
+		timer = Executors.newSingleThreadScheduledExecutor(task -> daemon(task, "ai-deadline"));
+	}
+
+	/**
+	 * Asks the bot for its move
+	 *
+	 * @param ai the bot whose turn it is
+	 * @param board the current state of the game
+	 * @param lastMove the last move that that has been played in the game, null if its the start
+	 * @param maxMillis how long the bot may take before it is stopped, 0 for no limit
+	 * @return the column the bot plays. Cancelling it stops the bot
+	 */
+	public CompletableFuture<Integer> requestMove(AI ai, BoardSnapshot board, Move lastMove, long maxMillis) {
+		CompletableFuture<Integer> result = new CompletableFuture<>();
+
+		Future<?> task = executor.submit(() -> {
+			//Clearing any stop from an earlier move first, a cancel after this stops this move
+			ai.resetStop();
+
+			//Cancelled before it got its turn
+			if(result.isDone())
+				return;
+
+			ScheduledFuture<?> stopper = maxMillis > 0 ? timer.schedule(ai::stop, maxMillis, TimeUnit.MILLISECONDS) : null;
+			try {
+				result.complete(ai.move(board, lastMove));
+			} catch(Throwable t) {
+				result.completeExceptionally(t);
+			} finally {
+				if(stopper != null)
+					stopper.cancel(false);
+			}
+		});
+
+		result.whenComplete((col, t) -> {
+			if(result.isCancelled()) {
+				task.cancel(false);
+				ai.stop();
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Stops taking requests. A move being worked out is finished, the rest are dropped
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	/*
+	 * Creates a thread that does not keep the program running
+	 */
+	private static Thread daemon(Runnable task, String name) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
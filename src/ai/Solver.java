@@ -0,0 +1,351 @@
+package ai;
+
+/**
+ * Works out the exact result of a position with perfect play from both sides.
+ *
+ * A score of 0 is a draw. A positive score means the player to move wins, and
+ * the sooner they win the higher it is: winning with their last disc scores 1
+ * and winning with their fourth disc scores 18. Negative scores are the same
+ * for the opponent.
+ *
+ * The search is negamax with alpha-beta pruning, but it only ever asks
+ * yes/no questions ("is the score above x?") with a window of width one, and
+ * narrows the range the score can be in until it is known. Moves that lose on
+ * the spot are never searched, moves that make the most new threats are
+ * searched first and every bound found is kept in a transposition table.
+ */
+public class Solver {
+
+	public static final int MIN_SCORE = -BitBoard.SIZE / 2 + 3;
+	public static final int MAX_SCORE = (BitBoard.SIZE + 1) / 2 - 3;
+
+	private static final int CLOCK_MASK = 1023; //The clock is checked every 1024 positions
+
+	private final BitBoard board = new BitBoard();
+	private final TranspositionTable table;
+	private final int[][] moves = new int[BitBoard.SIZE + 1][BitBoard.COLS]; //Move list for each number of discs
+	private final int[] moveScores = new int[BitBoard.COLS];
+
+	private long nodes = 0; //Positions visited by the last solve
+	private long startTime = 0; //System.nanoTime the last solve started at
+	private long millis = 0; //How long the last solve took
+	private int score = 0; //Score found by the last solve
+	private long deadline = 0; //System.nanoTime the solve has to stop at, 0 for none
+	private boolean stopped = false; //Set once the deadline has passed or the solve was stopped
+	private volatile boolean aborted = false; //Set by another thread to stop the solve, stays set until resetStop
+
+	public Solver() {
+		this(new TranspositionTable(Search.DEFAULT_TABLE_MB));
+	}
+
+	/**
+	 * Creates a solver that keeps its bounds in the given table. The table must
+	 * not be shared with a Search, their scores mean different things
+	 *
+	 * @param table the transposition table to use
+	 */
+	public Solver(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Returns the exact score of the position
+	 *
+	 * @param position the position to solve, it is copied
+	 * @param millis how long the solve may take, 0 for no limit
+	 * @return the score, not meaningful if isStopped is true afterwards
+	 */
+	public int solve(BitBoard position, long millis) {
+		start(position, millis);
+
+		score = solveCurrent(-BitBoard.SIZE, BitBoard.SIZE);
+
+		finish();
+		return score;
+	}
+
+	/**
+	 * Returns the best column in the position, the one that wins the fastest,
+	 * draws, or loses the slowest. The score of the position is available from
+	 * getScore afterwards
+	 *
+	 * @param position the position to solve, it is copied
+	 * @param millis how long the solve may take, 0 for no limit
+	 * @return the best column, or -1 if there is no legal move or the time ran out
+	 */
+	public int bestMove(BitBoard position, long millis) {
+		start(position, millis);
+
+		int played = board.getMoves();
+		int bestCol = -1;
+		score = -BitBoard.SIZE;
+
+		//Winning right away needs no search
+		for(int col : MoveOrdering.CENTER_FIRST) {
+			if(board.canPlay(col) && board.isWinningMove(col)) {
+				score = (BitBoard.SIZE + 1 - played) / 2;
+				finish();
+				return col;
+			}
+		}
+
+		long possible = board.nonLosingMoves();
+
+		//Every move loses next turn, so any legal one will do
+		if(possible == 0) {
+			score = -(BitBoard.SIZE - played) / 2;
+			for(int col : MoveOrdering.CENTER_FIRST) {
+				if(board.canPlay(col)) {
+					bestCol = col;
+					break;
+				}
+			}
+			finish();
+			return bestCol;
+		}
+
+		for(int col : MoveOrdering.CENTER_FIRST) {
+			if((possible & BitBoard.columnMask(col)) == 0)
+				continue;
+
+			//Only finding the exact score of the reply if it beats the best so far
+			board.play(col);
+			int value = -solveCurrent(-BitBoard.SIZE, -score);
+			board.undo();
+
+			if(stopped) {
+				bestCol = -1;
+				break;
+			}
+
+			if(bestCol == -1 || value > score) {
+				score = value;
+				bestCol = col;
+			}
+		}
+
+		finish();
+		return bestCol;
+	}
+
+	/**
+	 * Stops a solve running on another thread. The stop lasts until resetStop,
+	 * so a solve started after it returns straight away too
+	 */
+	public void stop() {
+		aborted = true;
+	}
+
+	/**
+	 * Clears a stop, so the next solve runs until it finishes or its time is up
+	 */
+	public void resetStop() {
+		aborted = false;
+	}
+
+	/*
+	 * Resets the counters and loads the position
+	 */
+	private void start(BitBoard position, long millis) {
+		board.copyFrom(position);
+		nodes = 0;
+		startTime = System.nanoTime();
+		stopped = false;
+		deadline = millis > 0 ? startTime + millis * 1_000_000L : 0;
+	}
+
+	/*
+	 * Records how long the solve took
+	 */
+	private void finish() {
+		millis = (System.nanoTime() - startTime) / 1_000_000L;
+	}
+
+	/*
+	 * Narrows the score of the current position down with null window searches.
+	 * If the score is outside the range, the nearest end of it is returned
+	 */
+	private int solveCurrent(int min, int max) {
+		int played = board.getMoves();
+
+		if(board.canWinNext())
+			return (BitBoard.SIZE + 1 - played) / 2;
+
+		min = Math.max(min, -(BitBoard.SIZE - played) / 2);
+		max = Math.min(max, (BitBoard.SIZE + 1 - played) / 2);
+
+		while(min < max && !stopped) {
+			//Testing closer to 0 first, since those searches are the quickest
+			int med = min + (max - min) / 2;
+			if(med <= 0 && min / 2 < med)
+				med = min / 2;
+			else if(med >= 0 && max / 2 > med)
+				med = max / 2;
+
+			int r = negamax(med, med + 1);
+			if(r <= med)
+				max = r;
+			else
+				min = r;
+		}
+
+		return min;
+	}
+
+	/*
+	 * Returns the score of the current position if it is inside the window, or
+	 * a bound past the side of the window it is on. The player to move is known
+	 * not to be able to win next turn
+	 */
+	private int negamax(int alpha, int beta) {
+		nodes++;
+
+		if((nodes & CLOCK_MASK) == 0 && (aborted || (deadline != 0 && System.nanoTime() - deadline > 0)))
+			stopped = true;
+		if(stopped)
+			return 0;
+
+		int played = board.getMoves();
+		long possible = board.nonLosingMoves();
+
+		//Every move lets the opponent win
+		if(possible == 0)
+			return -(BitBoard.SIZE - played) / 2;
+
+		//Neither player has a disc left to win with
+		if(played >= BitBoard.SIZE - 2)
+			return 0;
+
+		//The opponent cannot win before their next disc
+		int min = -(BitBoard.SIZE - 2 - played) / 2;
+		if(alpha < min) {
+			alpha = min;
+			if(alpha >= beta)
+				return alpha;
+		}
+
+		//The player to move cannot win before the disc after next
+		int max = (BitBoard.SIZE - 1 - played) / 2;
+
+		long key = board.key();
+		long entry = table.probe(key);
+		if(entry != 0) {
+			int stored = TranspositionTable.getScore(entry);
+			if(TranspositionTable.getFlag(entry) == TranspositionTable.LOWER) {
+				if(alpha < stored) {
+					alpha = stored;
+					if(alpha >= beta)
+						return alpha;
+				}
+			} else if(stored < max) {
+				max = stored;
+			}
+		}
+
+		if(beta > max) {
+			beta = max;
+			if(alpha >= beta)
+				return beta;
+		}
+
+		int count = order(possible, played);
+		int[] list = moves[played];
+
+		for(int i = 0; i < count; i++) {
+			board.play(list[i]);
+			int value = -negamax(-beta, -alpha);
+			board.undo();
+
+			if(stopped)
+				return 0;
+
+			if(value >= beta) {
+				table.store(key, BitBoard.SIZE - played, value, TranspositionTable.LOWER, list[i]);
+				return value;
+			}
+			if(value > alpha)
+				alpha = value;
+		}
+
+		table.store(key, BitBoard.SIZE - played, alpha, TranspositionTable.UPPER, TranspositionTable.NO_MOVE);
+		return alpha;
+	}
+
+	/*
+	 * Fills the move list for the number of discs with the columns in the mask,
+	 * the ones that leave the most cells to win on first and the center first on ties
+	 */
+	private int order(long possible, int played) {
+		int[] list = moves[played];
+		int count = 0;
+
+		for(int col : MoveOrdering.CENTER_FIRST) {
+			long move = possible & BitBoard.columnMask(col);
+			if(move == 0)
+				continue;
+
+			int value = Long.bitCount(BitBoard.winningCells(board.current() | move, board.mask() | move));
+			int i = count++;
+			while(i > 0 && moveScores[i - 1] < value) {
+				list[i] = list[i - 1];
+				moveScores[i] = moveScores[i - 1];
+				i--;
+			}
+			list[i] = col;
+			moveScores[i] = value;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the number of discs, counting both players, until the game ends
+	 * with perfect play, given a score and the number of discs on the board
+	 */
+	public static int getDistance(int score, int played) {
+		if(score > 0)
+			return 2 * ((BitBoard.SIZE + 1 - played) / 2 - score) + 1;
+		if(score < 0)
+			return 2 * ((BitBoard.SIZE - played) / 2 + score) + 2;
+		return BitBoard.SIZE - played;
+	}
+
+	/**
+	 * Converts a score to the scale Search uses, where a win is WIN_SCORE minus
+	 * the number of discs played until it
+	 */
+	public static int toSearchScore(int score, int played) {
+		if(score == 0)
+			return 0;
+		int distance = getDistance(score, played);
+		return score > 0 ? Search.WIN_SCORE - distance : -(Search.WIN_SCORE - distance);
+	}
+
+	/**
+	 * Returns the score found by the last solve
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns true if the last solve ran out of time or was stopped before it finished
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Returns the number of positions visited by the last solve
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns how long the last solve took in ms
+	 */
+	public long getMillis() {
+		return millis;
+	}
+}
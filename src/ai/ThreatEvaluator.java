@@ -0,0 +1,200 @@
+package ai;
+
+import java.util.Arrays;
+
+/**
+ * Scores positions that the search stops at before the game is over.
+ *
+ * There are 69 lines of four cells on the board. A line only counts for a
+ * player while the other player has no disc in it, and it is worth more the
+ * more discs it has. A line with three discs is a threat, and a threat on the
+ * right row is worth extra: near the end of the game the player who moved
+ * first gets to fill the odd rows (counting from 1 at the bottom) and the
+ * other player the even rows, so those are the threats that tend to come true.
+ * Discs in the center column get a small bonus.
+ *
+ * The disc count of each line is kept up to date as discs are played and
+ * taken back, so only the lines through the changed cell are looked at instead
+ * of all 69.
+ */
+public class ThreatEvaluator {
+
+	//Largest score the evaluator gives, well below anything Search counts as a win
+	public static final int MAX_SCORE = 500;
+
+	private static final int[] LINE_WEIGHTS = { 0, 1, 5, 20, 0 }; //By the number of discs in an open line
+	private static final int PARITY_BONUS = 30; //For a threat on the row that suits the player
+	private static final int CENTER_BONUS = 3; //For each disc in the center column
+
+	private static final int LINES = 69;
+	private static final int CENTER = BitBoard.COLS / 2;
+
+	private static final int[][] LINE_CELLS = new int[LINES][4]; //Bit index of each cell in a line
+	private static final int[][] CELL_LINES = new int[BitBoard.COLS * BitBoard.H1][]; //line * 4 + place in the line
+
+	static {
+		buildLines();
+	}
+
+	private final int[][] counts = new int[2][LINES]; //Discs each player has in each line
+	private final int[] filled = new int[LINES]; //Which of the four cells of each line are filled, one bit each
+	private final int[][] threats = new int[2][2]; //Threats by player, then by row parity (0 = odd rows)
+	private int lineScore = 0; //Total line and center score, from player 1's point of view
+
+	/**
+	 * Recomputes everything for a new position
+	 *
+	 * @param board the position
+	 */
+	public void set(BitBoard board) {
+		for(int p = 0; p < 2; p++) {
+			Arrays.fill(counts[p], 0);
+			Arrays.fill(threats[p], 0);
+		}
+		Arrays.fill(filled, 0);
+		lineScore = 0;
+
+		long player1 = board.getPlayer() == 1 ? board.current() : board.opponent();
+		long player2 = board.mask() ^ player1;
+
+		for(int cell = 0; cell < CELL_LINES.length; cell++) {
+			if((player1 >>> cell & 1) != 0)
+				play(cell, 0);
+			else if((player2 >>> cell & 1) != 0)
+				play(cell, 1);
+		}
+	}
+
+	/**
+	 * Updates the lines through a cell after a disc is played there
+	 *
+	 * @param cell the bit index of the cell, as BitBoard numbers them
+	 * @param player 0 for player 1, 1 for player 2
+	 */
+	public void play(int cell, int player) {
+		for(int entry : CELL_LINES[cell]) {
+			int line = entry >> 2;
+			remove(line);
+			counts[player][line]++;
+			filled[line] |= 1 << (entry & 3);
+			add(line);
+		}
+
+		if(cell / BitBoard.H1 == CENTER)
+			lineScore += player == 0 ? CENTER_BONUS : -CENTER_BONUS;
+	}
+
+	/**
+	 * Updates the lines through a cell after the disc there is taken back
+	 *
+	 * @param cell the bit index of the cell, as BitBoard numbers them
+	 * @param player 0 for player 1, 1 for player 2
+	 */
+	public void undo(int cell, int player) {
+		for(int entry : CELL_LINES[cell]) {
+			int line = entry >> 2;
+			remove(line);
+			counts[player][line]--;
+			filled[line] &= ~(1 << (entry & 3));
+			add(line);
+		}
+
+		if(cell / BitBoard.H1 == CENTER)
+			lineScore -= player == 0 ? CENTER_BONUS : -CENTER_BONUS;
+	}
+
+	/**
+	 * Returns the score of the position for the player to move
+	 *
+	 * @param moves the number of discs on the board
+	 * @param player the player to move, 1 or 2
+	 */
+	public int evaluate(int moves, int player) {
+		int toMove = player - 1;
+
+		//With an even number of discs down, the player to move is the one who went first
+		int first = moves % 2 == 0 ? toMove : toMove ^ 1;
+		int second = first ^ 1;
+
+		int score = lineScore;
+		int parity = threats[first][0] - threats[second][1];
+		score += first == 0 ? parity * PARITY_BONUS : -parity * PARITY_BONUS;
+
+		score = Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+		return toMove == 0 ? score : -score;
+	}
+
+	/*
+	 * Takes a line's share out of the score and threat counts
+	 */
+	private void remove(int line) {
+		apply(line, -1);
+	}
+
+	/*
+	 * Puts a line's share into the score and threat counts
+	 */
+	private void add(int line) {
+		apply(line, 1);
+	}
+
+	/*
+	 * Adds or subtracts what a line is worth. A line with discs from both players
+	 * is worth nothing
+	 */
+	private void apply(int line, int sign) {
+		int c1 = counts[0][line], c2 = counts[1][line];
+
+		if(c1 > 0 && c2 > 0)
+			return;
+
+		int player = c1 > 0 ? 0 : 1;
+		int discs = c1 + c2;
+
+		lineScore += sign * (player == 0 ? LINE_WEIGHTS[discs] : -LINE_WEIGHTS[discs]);
+
+		if(discs == 3) {
+			//The empty cell is the one bit missing from the filled cells
+			int empty = Integer.numberOfTrailingZeros(~filled[line] & 0xF);
+			int row = LINE_CELLS[line][empty] % BitBoard.H1;
+			threats[player][row % 2] += sign;
+		}
+	}
+
+	/*
+	 * Lists the cells of every line and the lines through every cell
+	 */
+	private static void buildLines() {
+		int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } }; //Column and row steps
+		int[] lineCount = new int[CELL_LINES.length];
+		int line = 0;
+
+		for(int[] dir : directions) {
+			for(int col = 0; col < BitBoard.COLS; col++) {
+				for(int row = 0; row < BitBoard.ROWS; row++) {
+					int endCol = col + 3 * dir[0], endRow = row + 3 * dir[1];
+					if(endCol >= BitBoard.COLS || endRow < 0 || endRow >= BitBoard.ROWS)
+						continue;
+
+					for(int i = 0; i < 4; i++) {
+						int cell = (col + i * dir[0]) * BitBoard.H1 + row + i * dir[1];
+						LINE_CELLS[line][i] = cell;
+						lineCount[cell]++;
+					}
+					line++;
+				}
+			}
+		}
+
+		for(int cell = 0; cell < CELL_LINES.length; cell++)
+			CELL_LINES[cell] = new int[lineCount[cell]];
+
+		int[] next = new int[CELL_LINES.length];
+		for(int l = 0; l < LINES; l++) {
+			for(int i = 0; i < 4; i++) {
+				int cell = LINE_CELLS[l][i];
+				CELL_LINES[cell][next[cell]++] = l << 2 | i;
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package ai;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table of searched positions, so a position reached through a
+ * different order of moves does not have to be searched again.
+ *
+ * Entries live in two primitive arrays, one holding the packed result and one
+ * holding the position key XORed with that result. Nothing is allocated once
+ * the table is created.
+ *
+ * The table is shared by every thread of a parallel search without any
+ * locking. Two threads writing the same slot at once can leave the key of
+ * one entry next to the result of the other, but then the XOR no longer gives
+ * back the key being looked up, so the torn entry reads as a miss.
+ *
+ * The packed result is laid out as
+ *
+ *  bits  0-15  score, offset so it is never negative
+ *  bits 16-23  depth that the score was searched to
+ *  bits 24-25  bound type (EXACT, LOWER or UPPER)
+ *  bits 26-29  best column, NO_MOVE if there is none
+ *  bits 30-37  generation of the search that stored it
+ *  bit  38     set on every stored entry, so an empty slot reads as 0
+ */
+public class TranspositionTable {
+
+	public static final int EXACT = 0; //The score is the true value of the position
+	public static final int LOWER = 1; //The true value is at least the score
+	public static final int UPPER = 2; //The true value is at most the score
+
+	public static final int NO_MOVE = 15;
+
+	private static final int SCORE_OFFSET = 1 << 15;
+	private static final long USED = 1L << 38;
+	private static final int ENTRY_BYTES = 16;
+
+	private final long[] keys;
+	private final long[] data;
+	private final int shift; //Turns a hashed key into an index
+
+	private volatile int generation = 0; //Incremented for every new search so old entries can be replaced
+
+	/**
+	 * Creates a table that takes up at most the given amount of memory. The
+	 * number of entries is rounded down to a power of two
+	 *
+	 * @param megabytes size of the table in MB, at least 1
+	 */
+	public TranspositionTable(int megabytes) {
+		long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+		int bits = 63 - Long.numberOfLeadingZeros(bytes / ENTRY_BYTES);
+		bits = Math.min(bits, 30);
+
+		keys = new long[1 << bits];
+		data = new long[1 << bits];
+		shift = 64 - bits;
+	}
+
+	/**
+	 * Returns the packed entry for the key, or 0 if the position is not stored.
+	 * Use the static getters to unpack it
+	 */
+	public long probe(long key) {
+		int i = index(key);
+		long entry = data[i];
+		return (keys[i] ^ entry) == key ? entry : 0;
+	}
+
+	/**
+	 * Stores a search result. Deeper results are kept over shallower ones from the
+	 * same search, while anything left over from an earlier search is replaced
+	 *
+	 * @param key the position key, see BitBoard.key
+	 * @param depth how deep the position was searched
+	 * @param score the score found
+	 * @param flag EXACT, LOWER or UPPER
+	 * @param move the best column, or NO_MOVE
+	 */
+	public void store(long key, int depth, int score, int flag, int move) {
+		int i = index(key);
+		long old = data[i];
+		boolean same = (keys[i] ^ old) == key;
+
+		if(old != 0 && !same && getGeneration(old) == (generation & 0xFF) && getDepth(old) > depth)
+			return;
+
+		//Keeping the best move of a shallower result if this one does not have one
+		if(move == NO_MOVE && same && old != 0)
+			move = getMove(old);
+
+		long entry = pack(depth, score, flag, move, generation);
+		data[i] = entry;
+		keys[i] = key ^ entry;
+	}
+
+	/**
+	 * Marks the start of a new search. Entries from earlier searches stay usable
+	 * but are the first to be replaced
+	 */
+	public synchronized void newSearch() {
+		generation++;
+	}
+
+	/**
+	 * Empties the table
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(data, 0);
+	}
+
+	/**
+	 * Returns the number of entries the table can hold
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	public static int getScore(long entry) {
+		return (int) (entry & 0xFFFF) - SCORE_OFFSET;
+	}
+
+	public static int getDepth(long entry) {
+		return (int) (entry >>> 16) & 0xFF;
+	}
+
+	public static int getFlag(long entry) {
+		return (int) (entry >>> 24) & 0x3;
+	}
+
+	public static int getMove(long entry) {
+		return (int) (entry >>> 26) & 0xF;
+	}
+
+	private static int getGeneration(long entry) {
+		return (int) (entry >>> 30) & 0xFF;
+	}
+
+	/*
+	 * Packs the fields of an entry into one long
+	 */
+	private static long pack(int depth, int score, int flag, int move, int generation) {
+		return (score + SCORE_OFFSET)
+				| (long) depth << 16
+				| (long) flag << 24
+				| (long) move << 26
+				| (long) (generation & 0xFF) << 30
+				| USED;
+	}
+
+	/*
+	 * Spreads the key over the table with a multiplicative hash
+	 */
+	private int index(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+}
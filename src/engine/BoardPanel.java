@@ -0,0 +1,360 @@
+package engine;
+
+import javax.swing.*;
+
+import metrics.Histogram;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Shape;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws the whole board as one component, in place of a label for each cell.
+ *
+ * The cells are kept in an image of their own, the board layer, and a cell is
+ * only drawn into it again when it changes. The disc images have a see-through
+ * hole in the middle, so a disc that is falling is drawn first and the board
+ * layer over it, and it shows through the empty cells on its way down. Only
+ * the round middle of a falling disc's image is drawn, the frame around it
+ * would cover the holes below.
+ *
+ * Discs fall by the clock rather than by frames, so the game carries on at
+ * its own pace while a render timer repaints about 60 times a second. The
+ * timer only runs while something is falling or the frame times are shown.
+ */
+public class BoardPanel extends JComponent implements ActionListener {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Game disc icons *
+	 */
+	private static final String EMPTY_ICON = "img/empty4.png";
+	private static final String RED_ICON = "img/red.png";
+	private static final String RED_WIN_ICON = "img/redWin.png";
+	private static final String YELLOW_ICON = "img/yellow.png";
+	private static final String YELLOW_WIN_ICON = "img/yellowWin.png";
+
+	private static final int FRAME_MILLIS = 16; // time between frames, about 60 a second
+	private static final double GRAVITY = 100; // how fast a falling disc speeds up, in cells per second squared
+	private static final Font FRAME_FONT = new Font("Monospaced", Font.BOLD, 14); // for the frame times
+
+	/**
+	 * Possible values for a disc dropped into a board column Default value is None
+	 * (empty)
+	 */
+	private enum Disc {
+		None(EMPTY_ICON), Player1(RED_ICON), Player2(YELLOW_ICON), Player1Win(RED_WIN_ICON), Player2Win(YELLOW_WIN_ICON);
+
+		private final String file;
+
+		Disc(String file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Disc images, each read from disk and decoded once when the board is loaded
+	 * and shared by every cell after that
+	 */
+	private static final Map<Disc, Image> IMAGES = new EnumMap<>(Disc.class);
+
+	static {
+		for (Disc disc : Disc.values()) {
+			IMAGES.put(disc, new ImageIcon(disc.file).getImage());
+		}
+	}
+
+	/**
+	 * A disc on its way down to its cell
+	 */
+	private static class Drop {
+		final int row, column;
+		final Image image;
+		final long start; // System.nanoTime the disc was let go
+		final double seconds; // how long it takes to land
+
+		Drop(int row, int column, Image image, long start) {
+			this.row = row;
+			this.column = column;
+			this.image = image;
+			this.start = start;
+			// it starts one cell above the board
+			this.seconds = Math.sqrt(2 * (row + 1) / GRAVITY);
+		}
+
+		/**
+		 * How far down the disc is, in cells from the top row
+		 */
+		double position(long now) {
+			double t = (now - start) / 1e9;
+			return Math.min(row, -1 + GRAVITY * t * t / 2);
+		}
+
+		boolean landed(long now) {
+			return (now - start) / 1e9 >= seconds;
+		}
+	}
+
+	private final int cellSize;
+	private final BufferedImage boardLayer;
+	private final Timer renderTimer = new Timer(FRAME_MILLIS, this);
+	private final List<Drop> drops = new ArrayList<>();
+
+	// the latest board, and the board as drawn in the layer apart from discs still falling
+	private BoardSnapshot board = BoardSnapshot.EMPTY;
+	private final int[][] drawn = new int[BoardSnapshot.ROWS][BoardSnapshot.COLUMNS];
+
+	// frame times in microseconds, all of them and for the second being counted
+	private final Histogram frameTimes = new Histogram();
+	private boolean showFrameTimes = false;
+	private long lastFrame = 0;
+	private long secondStart = 0;
+	private int secondFrames = 0;
+	private long secondMax = 0;
+	private String frameText = "";
+
+	/**
+	 * Create an empty board
+	 *
+	 * @param cellSize - the width and height of a cell in pixels
+	 */
+	public BoardPanel(int cellSize) {
+		this.cellSize = cellSize;
+		boardLayer = new BufferedImage(BoardSnapshot.COLUMNS * cellSize, BoardSnapshot.ROWS * cellSize,
+				BufferedImage.TYPE_INT_ARGB);
+		setPreferredSize(new Dimension(boardLayer.getWidth(), boardLayer.getHeight()));
+		setSize(getPreferredSize());
+		setDoubleBuffered(true);
+		setOpaque(true);
+		setBackground(Color.black);
+		renderTimer.setCoalesce(true);
+		for (int[] row : drawn) {
+			Arrays.fill(row, -1);
+		}
+		drawAll();
+	}
+
+	/**
+	 * Show a new state of the board. Discs that were added start falling into
+	 * their cells, anything else that changed is drawn straight away. A board
+	 * with fewer discs than the last one is a new game and is drawn as it is
+	 *
+	 * @param snapshot - the board to show
+	 * @return the number of cells that changed
+	 */
+	public int setBoard(BoardSnapshot snapshot) {
+		return setBoard(snapshot, true);
+	}
+
+	/**
+	 * Show a new state of the board
+	 *
+	 * @param snapshot - the board to show
+	 * @param animate  - false to draw the board as it is, without any discs falling
+	 * @return the number of cells that changed
+	 */
+	public int setBoard(BoardSnapshot snapshot, boolean animate) {
+		long changed = snapshot.changedCells(board);
+		boolean newGame = snapshot.getMoves() < board.getMoves();
+		BoardSnapshot old = board;
+		board = snapshot;
+
+		if (newGame || !animate) {
+			drops.clear();
+			drawAll();
+			updateTimer();
+			repaint();
+			return Long.bitCount(changed);
+		}
+
+		long now = System.nanoTime();
+		long added = changed & ~(old.getDiscs(1) | old.getDiscs(2));
+		for (long cells = changed; cells != 0; cells &= cells - 1) {
+			int bit = Long.numberOfTrailingZeros(cells);
+			int row = BoardSnapshot.rowOf(bit), column = BoardSnapshot.columnOf(bit);
+
+			if ((added >>> bit & 1) != 0) {
+				// the falling disc is the player's plain disc, a win mark is drawn when it lands
+				int player = (snapshot.getDiscs(1) >>> bit & 1) != 0 ? 1 : 2;
+				drops.add(new Drop(row, column, IMAGES.get(Disc.values()[player]), now));
+			} else if (!falling(row, column)) {
+				drawCell(row, column);
+			}
+		}
+
+		updateTimer();
+		repaint();
+		return Long.bitCount(changed);
+	}
+
+	/**
+	 * Find the column under a point on the board
+	 *
+	 * @param x - distance from the left edge of the board in pixels
+	 * @return the column, -1 if the point is off the board
+	 */
+	public int columnAt(int x) {
+		int column = x / cellSize;
+		return x >= 0 && column < BoardSnapshot.COLUMNS ? column : -1;
+	}
+
+	/**
+	 * Show or hide the frame rate and frame times in the corner of the board.
+	 * While they are shown the board is repainted every frame, even when
+	 * nothing is moving, so the numbers keep counting
+	 *
+	 * @param show - true to show them
+	 */
+	public void setShowFrameTimes(boolean show) {
+		showFrameTimes = show;
+		lastFrame = 0;
+		updateTimer();
+		repaint();
+	}
+
+	/**
+	 * Get the time between frames while the board was animating
+	 *
+	 * @return every frame time so far in microseconds
+	 */
+	public Histogram getFrameTimes() {
+		return frameTimes;
+	}
+
+	/**
+	 * One tick of the render loop: lands the discs that reached their cells and
+	 * asks for the next frame
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		long now = System.nanoTime();
+		for (int i = drops.size() - 1; i >= 0; i--) {
+			Drop drop = drops.get(i);
+			if (drop.landed(now)) {
+				drops.remove(i);
+				drawCell(drop.row, drop.column);
+			}
+		}
+		repaint();
+		updateTimer();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setColor(getBackground());
+		g2.fillRect(0, 0, getWidth(), getHeight());
+
+		long now = System.nanoTime();
+		Shape clip = g2.getClip();
+		int inset = cellSize / 10; // where the hole in a cell's image starts
+		for (Drop drop : drops) {
+			int x = drop.column * cellSize, y = (int) Math.round(drop.position(now) * cellSize);
+			g2.clip(new Ellipse2D.Double(x + inset, y + inset, cellSize - 2 * inset, cellSize - 2 * inset));
+			g2.drawImage(drop.image, x, y, cellSize, cellSize, null);
+			g2.setClip(clip);
+		}
+		g2.drawImage(boardLayer, 0, 0, null);
+
+		if (renderTimer.isRunning()) {
+			countFrame(now);
+		}
+		if (showFrameTimes) {
+			g2.setFont(FRAME_FONT);
+			g2.setColor(Color.white);
+			g2.drawString(frameText, 6, 18);
+		}
+
+		// hands the frame to the screen now, some systems hold it back otherwise
+		Toolkit.getDefaultToolkit().sync();
+	}
+
+	/*
+	 * Records the time since the last frame and, once a second, the text shown
+	 * in the corner
+	 */
+	private void countFrame(long now) {
+		if (lastFrame != 0) {
+			long micros = (now - lastFrame) / 1000;
+			frameTimes.record(micros);
+			secondFrames++;
+			secondMax = Math.max(secondMax, micros);
+		}
+		lastFrame = now;
+
+		if (now - secondStart >= 1_000_000_000L) {
+			frameText = String.format("%d fps  max %.1f ms", secondFrames, secondMax / 1000.0);
+			secondStart = now;
+			secondFrames = 0;
+			secondMax = 0;
+		}
+	}
+
+	/*
+	 * Runs the render timer only while it has something to do
+	 */
+	private void updateTimer() {
+		boolean needed = !drops.isEmpty() || showFrameTimes;
+		if (needed && !renderTimer.isRunning()) {
+			lastFrame = 0;
+			renderTimer.start();
+		} else if (!needed && renderTimer.isRunning()) {
+			renderTimer.stop();
+		}
+	}
+
+	/*
+	 * Is a disc still falling into the cell?
+	 */
+	private boolean falling(int row, int column) {
+		for (Drop drop : drops) {
+			if (drop.row == row && drop.column == column) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Draws every cell of the board layer that does not match the latest board
+	 */
+	private void drawAll() {
+		for (int i = 0; i < BoardSnapshot.ROWS; i++) {
+			for (int j = 0; j < BoardSnapshot.COLUMNS; j++) {
+				drawCell(i, j);
+			}
+		}
+	}
+
+	/*
+	 * Draws one cell of the board layer as it is on the latest board, if it
+	 * does not look like that already
+	 */
+	private void drawCell(int row, int column) {
+		int value = board.getBoardPos(row, column);
+		if (drawn[row][column] == value) {
+			return;
+		}
+		drawn[row][column] = value;
+
+		Graphics2D g = boardLayer.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(IMAGES.get(Disc.values()[value]), column * cellSize, row * cellSize, cellSize, cellSize, null);
+		g.dispose();
+	}
+}
@@ -0,0 +1,186 @@
+package engine;
+
+/**
+ * A copy of the board at one moment of a game that can never change. The game
+ * engine makes a new one after every disc, so bots, the GUI and anything else
+ * watching the game can hold on to it and read it from any thread without
+ * copying it or getting in the way of the engine.
+ *
+ * Each player's discs are packed into one long the same way GameBoard keeps
+ * them: the cell in row r (counted from the bottom) of column c is bit
+ * c * 7 + r.
+ */
+public final class BoardSnapshot {
+	/**
+	 * number of columns and rows for the board
+	 */
+	public static final int ROWS = 6;
+	public static final int COLUMNS = 7;
+
+	/**
+	 * bits used by each column, one for each row plus one left empty
+	 */
+	private static final int COLUMN_BITS = ROWS + 1;
+
+	/**
+	 * the board before the first move, with player 1 to move
+	 */
+	public static final BoardSnapshot EMPTY = new BoardSnapshot(0, 0, 0, 1, -1);
+
+	private final long player1;
+	private final long player2;
+	private final long winningLine;
+	private final int moves;
+	private final int nextPlayer;
+	private final int lastColumn;
+
+	/**
+	 * Create a snapshot from packed discs
+	 *
+	 * @param player1     - player 1's discs
+	 * @param player2     - player 2's discs
+	 * @param winningLine - the four cells of the winning line, 0 if there is none
+	 * @param nextPlayer  - the player to move next
+	 * @param lastColumn  - the column of the last disc, -1 if there is none
+	 */
+	public BoardSnapshot(long player1, long player2, long winningLine, int nextPlayer, int lastColumn) {
+		this.player1 = player1;
+		this.player2 = player2;
+		this.winningLine = winningLine;
+		this.moves = Long.bitCount(player1) + Long.bitCount(player2);
+		this.nextPlayer = nextPlayer;
+		this.lastColumn = lastColumn;
+	}
+
+	/**
+	 * Get a player's discs
+	 *
+	 * @param playerNumber - 1 or 2
+	 * @return the player's discs packed into a long
+	 */
+	public long getDiscs(int playerNumber) {
+		return playerNumber == 1 ? player1 : player2;
+	}
+
+	/**
+	 * Get the number of discs on the board
+	 *
+	 * @return the number of moves played
+	 */
+	public int getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Get the player whose turn it is
+	 *
+	 * @return 1 or 2
+	 */
+	public int getNextPlayer() {
+		return nextPlayer;
+	}
+
+	/**
+	 * Get the column the last disc went in
+	 *
+	 * @return the column, -1 at the start of the game
+	 */
+	public int getLastColumn() {
+		return lastColumn;
+	}
+
+	/**
+	 * Get the cells of the winning line
+	 *
+	 * @return the four cells packed like the discs, 0 if nobody has won
+	 */
+	public long getWinningLine() {
+		return winningLine;
+	}
+
+	/**
+	 * Find the cells that look different on another snapshot, counting discs
+	 * that joined or left the winning line
+	 *
+	 * @param other - the snapshot to compare with
+	 * @return the cells packed like the discs, 0 if the boards look the same
+	 */
+	public long changedCells(BoardSnapshot other) {
+		return (player1 ^ other.player1) | (player2 ^ other.player2) | (winningLine ^ other.winningLine);
+	}
+
+	/**
+	 * Get the row of a cell, numbered the same way as GameBoard's array
+	 *
+	 * @param bit - the cell's bit
+	 * @return the row, 0 is the top
+	 */
+	public static int rowOf(int bit) {
+		return ROWS - 1 - bit % COLUMN_BITS;
+	}
+
+	/**
+	 * Get the column of a cell
+	 *
+	 * @param bit - the cell's bit
+	 * @return the column
+	 */
+	public static int columnOf(int bit) {
+		return bit / COLUMN_BITS;
+	}
+
+	/**
+	 * Is the board full?
+	 *
+	 * @return true if there is no room for another disc
+	 */
+	public boolean isFull() {
+		return moves == ROWS * COLUMNS;
+	}
+
+	/**
+	 * Get the number of discs in a column
+	 *
+	 * @param columnIndex - the column in question
+	 * @return the number of filled positions
+	 */
+	public int getColumnHeight(int columnIndex) {
+		long column = (player1 | player2) >>> (columnIndex * COLUMN_BITS) & ((1L << ROWS) - 1);
+		return Long.bitCount(column);
+	}
+
+	/**
+	 * Get a position on the board, numbered the same way as GameBoard's array
+	 *
+	 * @param rowIndex    - the row position, 0 is the top
+	 * @param columnIndex - the column position
+	 * @return 0 if empty, the player number, or 3 or 4 for player 1 or 2's
+	 *         discs in the winning line
+	 */
+	public int getBoardPos(int rowIndex, int columnIndex) {
+		long bit = 1L << (columnIndex * COLUMN_BITS + ROWS - 1 - rowIndex);
+		int win = (winningLine & bit) != 0 ? 2 : 0;
+		if ((player1 & bit) != 0) {
+			return 1 + win;
+		}
+		if ((player2 & bit) != 0) {
+			return 2 + win;
+		}
+		return 0;
+	}
+
+	/**
+	 * Get an array representation of the board, for code that still works on arrays
+	 *
+	 * @return a new array laid out like GameBoard's, row 0 at the top
+	 */
+	public int[][] toArray() {
+		int[][] board = new int[ROWS][COLUMNS];
+		for (int i = 0; i < ROWS; i++) {
+			for (int j = 0; j < COLUMNS; j++) {
+				board[i][j] = getBoardPos(i, j);
+			}
+		}
+		return board;
+	}
+}
@@ -7,6 +7,9 @@ package engine;
 import javax.swing.*;
 import javax.swing.border.Border;
 import ai.*;
+import history.GameRecord;
+import history.GameStore;
+import metrics.RepaintEvent;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -18,30 +21,27 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 public class GUI extends MouseAdapter implements ActionListener {
-	/**
-	 * Game disc icons *
-	 */
-	private static final String EMPTY_ICON = "img/empty4.png";
-	private static final String RED_ICON = "img/red.png";
-	private static final String RED_WIN_ICON = "img/redWin.png";
-	private static final String YELLOW_ICON = "img/yellow.png";
-	private static final String YELLOW_WIN_ICON = "img/yellowWin.png";
-
 	private static final int IMG_SIZE = 100;
 	private static final int Y_OFFSET = 75;
 	private static final int X_OFFSET = 75;
+	private static final long MOVE_DEADLINE = 10000; // bots are stopped if a move takes longer than this
+	private static final String GAMES_FILE = "games.c4r"; // where finished games are recorded
 	private GameEngine engine = null;
 	private JFrame frame;
 	private JPanel panel;
 
 	/**
-	 * array representation of the board of the board's images. Each slot tells what
-	 * kind of image is in the slot *
+	 * the game board, drawn as one component *
 	 */
-	private JLabel[][] board = null;
+	private final BoardPanel boardPanel = new BoardPanel(IMG_SIZE);
 	private JLabel score;
 	private JLabel currentTurn = null;
 	private JMenuBar menuBar;
@@ -57,6 +57,12 @@ public class GUI extends MouseAdapter implements ActionListener {
 	private int speed = 500;
 	Timer timer = new Timer(speed, this);
 
+	private final SearchExecutor searchExecutor = new SearchExecutor();
+	private CompletableFuture<Integer> pendingMove = null; // the bot move being worked out, null if there is none
+
+	private GameStore store = null; // null if games cannot be recorded
+	private boolean replaying = false; // the game is paused while the board shows a recorded one
+
 	private boolean waiting = false;
 	private boolean gameOn = false;
 	final Color yellow = new Color(245, 245, 0);
@@ -72,24 +78,22 @@ public class GUI extends MouseAdapter implements ActionListener {
 	 * 
 	 ************************************************/
 
-	Object[] choices = { "Human Player", "Easy Bot", "Hard Bot" };
+	Object[] choices = { "Human Player", "Easy Bot", "Hard Bot", "Expert Bot", "Perfect Bot", "Monte Carlo Bot" };
 
 	private Player initPlayer(String p, int n) {
 		if (p.equals("Easy Bot"))
 			return new EasyBot(n);
 		if (p.equals("Hard Bot"))
 			return new HardBot(n);
+		if (p.equals("Expert Bot"))
+			return new ExpertBot(n);
+		if (p.equals("Perfect Bot"))
+			return new PerfectBot(n);
+		if (p.equals("Monte Carlo Bot"))
+			return new MonteCarloBot(n);
 		return new Player(n);
 	}
 
-	/**
-	 * Possible values for a disc dropped into a board column Default value is None
-	 * (empty)
-	 */
-	private enum Disc {
-		None, Player1, Player2, Player1Win, Player2Win
-	}
-
 	/**
 	 * Create a new graphical representation of the game. In other words, Create the
 	 * graphical interface for playing the game.
@@ -107,8 +111,10 @@ public class GUI extends MouseAdapter implements ActionListener {
 		frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
 		//frame.setUndecorated(true);
 		readSettings();
+		openStore();
 		timer.setDelay(speed);
 		engine = new GameEngine(initPlayer(p1Name, 1), initPlayer(p2Name, 2));
+		boardPanel.addMouseListener(this);
 		createMenu();
 		timer.start();
 	}
@@ -119,7 +125,6 @@ public class GUI extends MouseAdapter implements ActionListener {
 	 */
 	public void startGame() {
 		initBoard();
-		frame.addMouseListener(this);
 	}
 
 	public void readSettings() {
@@ -156,6 +161,25 @@ public class GUI extends MouseAdapter implements ActionListener {
 		}
 	}
 
+	/*
+	 * Opens the store finished games are recorded in. Games are not recorded
+	 * if it cannot be opened
+	 */
+	private void openStore() {
+		try {
+			store = new GameStore(new File(GAMES_FILE));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					store.close();
+				} catch (IOException ex) {
+					ex.printStackTrace();
+				}
+			}));
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
 	/**
 	 * Create the top menu for the game.
 	 */
@@ -168,11 +192,16 @@ public class GUI extends MouseAdapter implements ActionListener {
 		rematchItem.addActionListener(new Rematch());
 		rematchItem.setAccelerator(KeyStroke.getKeyStroke('R', Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
 		rematchItem.setEnabled(false);
+		JMenuItem replayItem = new JMenuItem("Replay");
+		replayItem.addActionListener(new Replay(frame));
+		replayItem.setAccelerator(KeyStroke.getKeyStroke('P', Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
+		replayItem.setEnabled(store != null);
 		JMenuItem exitItem = new JMenuItem("Exit");
 		exitItem.addActionListener(new ExitGame(frame));
 		exitItem.setAccelerator(KeyStroke.getKeyStroke('X', Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
 		file.add(newItem);
 		file.add(rematchItem);
+		file.add(replayItem);
 		file.add(exitItem);
 		menuBar.add(file);
 
@@ -195,6 +224,11 @@ public class GUI extends MouseAdapter implements ActionListener {
 		player2Item.setSize(300, 200);
 		options.add(player2Item);
 
+		JCheckBoxMenuItem frameTimesItem = new JCheckBoxMenuItem("Frame Times");
+		frameTimesItem.addActionListener(e -> boardPanel.setShowFrameTimes(frameTimesItem.isSelected()));
+		frameTimesItem.setAccelerator(KeyStroke.getKeyStroke('F', Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
+		options.add(frameTimesItem);
+
 		menuBar.add(options);
 
 		JMenu help = new JMenu("Help");
@@ -208,32 +242,22 @@ public class GUI extends MouseAdapter implements ActionListener {
 	}
 
 	/**
-	 * Update the board locations with the proper images after a new disc is added
-	 * to the board.
+	 * Update the board after a new disc is added to the board. The board only
+	 * redraws the cells that changed, and a new disc falls into place while the
+	 * game carries on
 	 */
 	public void updateBoard() {
-		int[][] a = engine.getBoard().getBoardArray();
-		for (int i = 0; i < board.length; i++) {
-			for (int j = 0; j < board[0].length; j++) {
-				Disc pos = Disc.values()[a[i][j]];
-				switch (pos) {
-				case None:
-					board[i][j].setIcon(new ImageIcon(EMPTY_ICON));
-					break;
-				case Player1:
-					board[i][j].setIcon(new ImageIcon(RED_ICON));
-					break;
-				case Player2:
-					board[i][j].setIcon(new ImageIcon(YELLOW_ICON));
-					break;
-				case Player1Win:
-					board[i][j].setIcon(new ImageIcon(RED_WIN_ICON));
-					break;
-				case Player2Win:
-					board[i][j].setIcon(new ImageIcon(YELLOW_WIN_ICON));
-					break;
-				}
-			}
+		if (replaying) {
+			return;
+		}
+		RepaintEvent event = new RepaintEvent();
+		event.begin();
+		int cells = boardPanel.setBoard(engine.getSnapshot());
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.cells = cells;
+			event.commit();
 		}
 	}
 
@@ -250,6 +274,23 @@ public class GUI extends MouseAdapter implements ActionListener {
 		p1Score.setText("" + points[1]);
 		p2Score.setText("" + points[2]);
 		drawScore.setText("" + points[0]);
+		recordGame(winner);
+		leaveGame();
+	}
+
+	/*
+	 * Adds the finished game to the store
+	 */
+	private void recordGame(Player winner) {
+		if (store == null) {
+			return;
+		}
+		try {
+			store.append(new GameRecord(p1Name, p2Name, engine.getFirstPlayer(), winner.getInt(),
+					engine.getStartMillis(), System.currentTimeMillis(), engine.getMoves()));
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
 	}
 
 	public void updateScoreText() {
@@ -288,21 +329,20 @@ public class GUI extends MouseAdapter implements ActionListener {
 	}
 
 	/**
-	 * Determine where the mouse was just clicked and put a disc in that column
+	 * Determine where on the board the mouse was just clicked and put a disc in
+	 * that column
 	 *
 	 * @param mouseEvent the mouse event
 	 */
 	@Override
 	public void mousePressed(MouseEvent mouseEvent) {
-		if (!(engine.getCurrentPlayer() instanceof AI) && waiting && gameOn) {
+		if (!(engine.getCurrentPlayer() instanceof AI) && waiting && gameOn && !replaying) {
 			waiting = false;
 			try {
 				// get the column that was clicked and putDisc down the correct image
-				if (mouseEvent.getY() < Y_OFFSET + 20 + IMG_SIZE * engine.getRowNumber()
-						&& mouseEvent.getY() > Y_OFFSET + 20
-						&& mouseEvent.getX() < X_OFFSET + 0 + IMG_SIZE * engine.getColumnNumber()
-						&& mouseEvent.getX() > X_OFFSET + 0) {
-					putDisc((mouseEvent.getX() - (X_OFFSET + 0)) / IMG_SIZE);
+				int column = boardPanel.columnAt(mouseEvent.getX());
+				if (column != -1) {
+					putDisc(column);
 				}
 			} catch (OutsideBoardException ignored) {
 			}
@@ -312,24 +352,48 @@ public class GUI extends MouseAdapter implements ActionListener {
 		}
 	}
 
+	/**
+	 * Asks the bot whose turn it is for its move. The move is worked out on the
+	 * search thread and played on the event thread once it is ready, so the
+	 * window keeps responding while the bot thinks
+	 */
 	public void actionPerformed(ActionEvent e) {
-		if (engine.getCurrentPlayer() instanceof AI && waiting && gameOn) {
+		requestBotMove();
+	}
+
+	/*
+	 * Asks the bot for its move if it is the bot's turn and no move is being
+	 * worked out already
+	 */
+	private void requestBotMove() {
+		if (engine.getCurrentPlayer() instanceof AI && waiting && gameOn && !replaying) {
 			waiting = false;
+			CompletableFuture<Integer> move = searchExecutor.requestMove((AI) engine.getCurrentPlayer(),
+					engine.getSnapshot(), engine.getLastMove(), MOVE_DEADLINE);
+			pendingMove = move;
+			move.whenComplete((col, error) -> SwingUtilities.invokeLater(() -> applyMove(move, col, error)));
+		}
+	}
+
+	/*
+	 * Plays the column a bot picked, unless the request was cancelled in the
+	 * meantime, because the game ended, was replaced or was paused for a replay
+	 */
+	private void applyMove(CompletableFuture<Integer> move, Integer col, Throwable error) {
+		if (move != pendingMove || !gameOn || replaying)
+			return;
+		pendingMove = null;
+		if (error != null) {
+			error.printStackTrace();
+		} else {
 			try {
-				int[][] board = engine.getBoard().getBoardArray();
-				int[][] newBoard = new int[board.length][board[0].length];
-				for (int r = 0; r < board.length; r++) {
-					for (int c = 0; c < board[0].length; c++) {
-						newBoard[r][c] = board[r][c];
-					}
-				}
-				putDisc(((AI) (engine.getCurrentPlayer())).move(newBoard, engine.getLastMove()));
+				putDisc(col);
 			} catch (OutsideBoardException ignored) {
 			}
-			if (gameOn)
-				displayCurrent();
-			waiting = true;
 		}
+		if (gameOn)
+			displayCurrent();
+		waiting = true;
 	}
 
 	/**
@@ -346,12 +410,10 @@ public class GUI extends MouseAdapter implements ActionListener {
 		panel.setBackground(Color.black);
 		panel.setLayout(null);
 
-		board = new JLabel[engine.getRowNumber()][engine.getColumnNumber()];
-
 		// Player 1 Panel
 		JPanel panel1 = new JPanel();
 		panel1.setBackground(red);
-		panel1.setBounds(X_OFFSET + (board[0].length + 1) * IMG_SIZE, Y_OFFSET, 325, 250);
+		panel1.setBounds(X_OFFSET + (engine.getColumnNumber() + 1) * IMG_SIZE, Y_OFFSET, 325, 250);
 		panel1.setLayout(new FlowLayout());
 		panel1.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
@@ -399,7 +461,7 @@ public class GUI extends MouseAdapter implements ActionListener {
 		// Player 2 Panel
 		JPanel panel2 = new JPanel();
 		panel2.setBackground(yellow);
-		panel2.setBounds(X_OFFSET + (board[0].length + 1) * IMG_SIZE, Y_OFFSET + 350, 325, 250);
+		panel2.setBounds(X_OFFSET + (engine.getColumnNumber() + 1) * IMG_SIZE, Y_OFFSET + 350, 325, 250);
 		panel2.setLayout(new FlowLayout());
 		panel2.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
@@ -417,14 +479,9 @@ public class GUI extends MouseAdapter implements ActionListener {
 		panel.add(panel2);
 
 		// Gameboard
-		for (int i = 0; i < board.length; i++) {
-			for (int j = 0; j < board[0].length; j++) {
-				board[i][j] = new JLabel();
-				board[i][j].setBounds(X_OFFSET + j * IMG_SIZE, Y_OFFSET + i * IMG_SIZE, IMG_SIZE, IMG_SIZE);
-				board[i][j].setIcon(new ImageIcon(EMPTY_ICON));
-				panel.add(board[i][j]);
-			}
-		}
+		boardPanel.setBounds(X_OFFSET, Y_OFFSET, engine.getColumnNumber() * IMG_SIZE, engine.getRowNumber() * IMG_SIZE);
+		boardPanel.setBoard(engine.getSnapshot());
+		panel.add(boardPanel);
 
 		frame.getContentPane().add(panel, BorderLayout.CENTER);
 		frame.setVisible(true);
@@ -453,12 +510,40 @@ public class GUI extends MouseAdapter implements ActionListener {
 		}
 	}
 
+	/*
+	 * Cancels the bot move being worked out, if any, so the bot is asked again
+	 * once the game carries on
+	 */
+	private void pauseBotMove() {
+		if (pendingMove != null) {
+			pendingMove.cancel(false);
+			pendingMove = null;
+			waiting = true;
+		}
+	}
+
+	/*
+	 * Stops the bot move being worked out, if any, and lets the players of the
+	 * current game stop anything they are doing in the background
+	 */
+	private void leaveGame() {
+		if (pendingMove != null) {
+			pendingMove.cancel(false);
+			pendingMove = null;
+		}
+		if (engine != null) {
+			engine.getP1().leaveGame();
+			engine.getP2().leaveGame();
+		}
+	}
+
 	private void displayGameOver() {
 		p1.setBorder(off);
 		p2.setBorder(off);
 	}
 
 	private void initGame() {
+		leaveGame();
 		engine = new GameEngine(initPlayer(p1Name, 1), initPlayer(p2Name, 2));
 		initBoard();
 		updateBoard();
@@ -492,6 +577,7 @@ public class GUI extends MouseAdapter implements ActionListener {
 	private class Rematch implements ActionListener {
 		@Override
 		public void actionPerformed(ActionEvent e) {
+			leaveGame();
 			engine = new GameEngine(initPlayer(p1Name, 1), initPlayer(p2Name, 2));
 			turn = turn == 1 ? 2 : 1;
 			if (turn == 1)
@@ -526,6 +612,7 @@ public class GUI extends MouseAdapter implements ActionListener {
 					p1Name = ans;
 				else
 					p2Name = ans;
+				leaveGame();
 				engine = new GameEngine(initPlayer(p1Name, 1), initPlayer(p2Name, 2));
 				points = new int[3];
 				initBoard();
@@ -557,6 +644,135 @@ public class GUI extends MouseAdapter implements ActionListener {
 		}
 	}
 
+	/**
+	 * Context Menu for replaying recorded games
+	 */
+	private class Replay implements ActionListener {
+		private JFrame frame;
+
+		Replay(JFrame frame) {
+			this.frame = frame;
+		}
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (replaying) {
+				return;
+			}
+			if (store.size() == 0) {
+				JOptionPane.showMessageDialog(frame, "No games have been recorded yet.", "Replay",
+						JOptionPane.INFORMATION_MESSAGE);
+				return;
+			}
+			replaying = true;
+			pauseBotMove();
+			new ReplayDialog(frame).setVisible(true);
+		}
+	}
+
+	/**
+	 * Window for stepping through a recorded game. The game being played is
+	 * paused and the board shows the recorded game until the window is closed.
+	 * Any move of any game can be jumped to straight away, and stepping forward
+	 * one move drops the disc in
+	 */
+	private class ReplayDialog extends JDialog {
+		private static final long serialVersionUID = 1L;
+
+		private JSpinner gameNumber;
+		private JLabel gameText = new JLabel();
+		private JLabel moveText = new JLabel();
+		private JSlider move = new JSlider(0, 0, 0);
+		private GameRecord game = null;
+		private int shownMove = 0;
+
+		ReplayDialog(JFrame frame) {
+			super(frame, "Replay", false);
+			setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+			int games = store.size();
+			gameNumber = new JSpinner(new SpinnerNumberModel(games, 1, games, 1));
+			gameNumber.addChangeListener(e -> loadGame());
+			move.addChangeListener(e -> showMove());
+
+			JButton first = new JButton("|<");
+			first.addActionListener(e -> move.setValue(0));
+			JButton back = new JButton("<");
+			back.addActionListener(e -> move.setValue(move.getValue() - 1));
+			JButton forward = new JButton(">");
+			forward.addActionListener(e -> move.setValue(move.getValue() + 1));
+			JButton last = new JButton(">|");
+			last.addActionListener(e -> move.setValue(move.getMaximum()));
+
+			JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+			top.add(new JLabel("Game"));
+			top.add(gameNumber);
+			top.add(gameText);
+
+			JPanel bottom = new JPanel(new FlowLayout(FlowLayout.LEFT));
+			bottom.add(first);
+			bottom.add(back);
+			bottom.add(forward);
+			bottom.add(last);
+			bottom.add(moveText);
+
+			setLayout(new BorderLayout());
+			add(top, BorderLayout.NORTH);
+			add(move, BorderLayout.CENTER);
+			add(bottom, BorderLayout.SOUTH);
+
+			addWindowListener(new WindowAdapter() {
+				@Override
+				public void windowClosed(WindowEvent e) {
+					replaying = false;
+					boardPanel.setBoard(engine.getSnapshot(), false);
+					requestBotMove();
+				}
+			});
+
+			loadGame();
+			pack();
+			setLocationRelativeTo(frame);
+		}
+
+		/*
+		 * Reads the chosen game from the store and shows how it ended
+		 */
+		private void loadGame() {
+			GameRecord loaded;
+			try {
+				loaded = store.get((Integer) gameNumber.getValue() - 1);
+			} catch (IOException ex) {
+				ex.printStackTrace();
+				JOptionPane.showMessageDialog(this, "The game could not be read.", "Replay", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			String date = DateFormat.getDateTimeInstance().format(new Date(loaded.getStartMillis()));
+			gameText.setText(loaded + ", " + date);
+
+			// the slider shows nothing while it is being set up for the new game
+			game = null;
+			move.setMaximum(loaded.getMoveCount());
+			move.setValue(loaded.getMoveCount());
+			game = loaded;
+			shownMove = -1;
+			showMove();
+		}
+
+		/*
+		 * Shows the board after the chosen move
+		 */
+		private void showMove() {
+			int ply = move.getValue();
+			if (game == null || ply == shownMove) {
+				return;
+			}
+			boardPanel.setBoard(game.getSnapshot(ply), ply == shownMove + 1 && shownMove != -1);
+			shownMove = ply;
+			moveText.setText("Move " + ply + " of " + game.getMoveCount());
+		}
+	}
+
 	/**
 	 * Context Menu for quitting the game
 	 */
@@ -4,14 +4,11 @@ package engine;
  * Version 3
  */
 
-import java.util.Stack;
-
 public class GameBoard {
 	/**
 	 * more friendly way to say a position is empty
 	 */
 	private static final int EMPTY_POS = 0;
-	private static GameBoard gameBoard = null;
 
 	/**
 	 * integer representation of the board. Similar to the one in GUI, but this only
@@ -27,37 +24,34 @@ public class GameBoard {
 	private static final int COLUMNS = 7;
 
 	/**
-	 * private constructor. use getInstance instead.
+	 * bits used by each column in a bitboard, one for each row plus one left
+	 * empty so lines cannot run from the top of one column into the next
 	 */
-	private GameBoard() {
-		clearBoard();
-	}
+	private static final int COLUMN_BITS = ROWS + 1;
 
 	/**
-	 * Creates a game board singleton
-	 *
-	 * @return an instance of the board or creates a new one if there isn't one
+	 * every line of four cells through each cell, as bitboard masks
 	 */
-	public static synchronized GameBoard getInstance() {
-		if (gameBoard == null) {
-			gameBoard = new GameBoard();
-		}
-		return gameBoard;
-	}
+	private static final long[][] CELL_LINES = buildLines();
 
 	/**
-	 * Check if the specific place(row,column) is full.
-	 *
-	 * @param row    - index of the row (zero based).
-	 * @param column - index of the column (zero based).
-	 * @return true if board position is already filled
+	 * the same board as bitboards, one for each player. The cell in row r
+	 * (counted from the bottom) of column c is bit c * COLUMN_BITS + r
 	 */
-	private boolean fullAtPos(int row, int column) throws OutsideBoardException {
-		if (isValidColumn(column) && isValidRow(row)) {
-			return board[row][column] != EMPTY_POS;
-		} else {
-			throw new OutsideBoardException();
-		}
+	private long[] discs;
+
+	/**
+	 * number of discs in each column and on the whole board
+	 */
+	private int[] heights;
+	private int discCount;
+
+	/**
+	 * Creates an empty board. Every game has its own board, so any number of
+	 * games can run at once
+	 */
+	public GameBoard() {
+		clearBoard();
 	}
 
 	/**
@@ -66,14 +60,7 @@ public class GameBoard {
 	 * @return true if full
 	 */
 	protected boolean isBoardFull() {
-		boolean b = true;
-		for (int i = 0; i < COLUMNS; i++) {
-			try {
-				b &= fullAtPos(0, i);
-			} catch (OutsideBoardException ignored) {
-			}
-		}
-		return b;
+		return discCount == ROWS * COLUMNS;
 	}
 
 	/**
@@ -90,6 +77,9 @@ public class GameBoard {
 			for (int i = ROWS - 1; i >= 0; i--) {
 				if (board[i][columnNumber] == EMPTY_POS) {
 					board[i][columnNumber] = playerNumber;
+					discs[playerNumber - 1] |= 1L << (columnNumber * COLUMN_BITS + heights[columnNumber]);
+					++heights[columnNumber];
+					++discCount;
 					return true;
 				}
 			}
@@ -126,11 +116,40 @@ public class GameBoard {
 		if (!isValidColumn(columnIndex)) {
 			throw new OutsideBoardException();
 		}
-		int i = 0;
-		while (i < ROWS && board[i][columnIndex] == EMPTY_POS) {
-			++i;
+		return heights[columnIndex];
+	}
+
+	/**
+	 * Find the line of four that the top disc of a column completes. Only the
+	 * lines through that disc are checked, so this is meant to be called right
+	 * after the disc is put in
+	 *
+	 * @param columnIndex - the column the last disc was put in
+	 * @return the four cells of the line as a bitboard mask, 0 if there is none
+	 */
+	protected long findWinningLine(int columnIndex) {
+		if (!isValidColumn(columnIndex) || heights[columnIndex] == 0) {
+			return 0;
+		}
+		int cell = columnIndex * COLUMN_BITS + heights[columnIndex] - 1;
+		long playerDiscs = (discs[0] >>> cell & 1) != 0 ? discs[0] : discs[1];
+
+		for (long line : CELL_LINES[cell]) {
+			if ((playerDiscs & line) == line) {
+				return line;
+			}
 		}
-		return ROWS - i;
+		return 0;
+	}
+
+	/**
+	 * Get a player's discs as a bitboard
+	 *
+	 * @param playerNumber - 1 or 2
+	 * @return the player's discs, laid out as described for discs
+	 */
+	protected long getDiscs(int playerNumber) {
+		return discs[playerNumber - 1];
 	}
 
 	/**
@@ -164,6 +183,9 @@ public class GameBoard {
 
 	protected final void clearBoard() {
 		board = new int[ROWS][COLUMNS];
+		discs = new long[2];
+		heights = new int[COLUMNS];
+		discCount = 0;
 	}
 
 	/**
@@ -184,20 +206,70 @@ public class GameBoard {
 		return COLUMNS;
 	}
 
-	protected void setWinningRow(Stack<Integer[]> s) {
-		while (!s.isEmpty() && s.size() > 5) {
-			s.pop();
+	/**
+	 * Mark the cells of a winning line so the GUI can highlight them, player 1's
+	 * discs become 3 and player 2's become 4
+	 *
+	 * @param line - the four cells as a bitboard mask, from findWinningLine
+	 */
+	protected void setWinningRow(long line) {
+		while (line != 0) {
+			int bit = Long.numberOfTrailingZeros(line);
+			line &= line - 1;
+
+			int row = ROWS - 1 - bit % COLUMN_BITS;
+			int column = bit / COLUMN_BITS;
+			if (board[row][column] == 1) {
+				board[row][column] = 3;
+			} else if (board[row][column] == 2) {
+				board[row][column] = 4;
+			}
+		}
+	}
+
+	/**
+	 * Build the masks of every line of four (across, up, and both diagonals)
+	 * and list them under each cell they pass through
+	 *
+	 * @return the lines through each cell, indexed by bit
+	 */
+	private static long[][] buildLines() {
+		int[][] steps = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } }; // column and row steps
+		long[] lines = new long[COLUMNS * ROWS * steps.length];
+		int lineCount = 0;
+
+		for (int[] step : steps) {
+			for (int c = 0; c < COLUMNS; c++) {
+				for (int r = 0; r < ROWS; r++) {
+					int endC = c + 3 * step[0], endR = r + 3 * step[1];
+					if (endC >= COLUMNS || endR < 0 || endR >= ROWS) {
+						continue;
+					}
+					long line = 0;
+					for (int i = 0; i < 4; i++) {
+						line |= 1L << ((c + i * step[0]) * COLUMN_BITS + r + i * step[1]);
+					}
+					lines[lineCount++] = line;
+				}
+			}
 		}
-		for (int i = 0; i < 4; i++) {
-			if (!s.isEmpty()) {
-				Integer[] coord = s.pop();
-
-				if (board[coord[0].intValue()][coord[1].intValue()] == 1) {
-					board[coord[0].intValue()][coord[1].intValue()] = 3;
-				} else if (board[coord[0].intValue()][coord[1].intValue()] == 2) {
-					board[coord[0].intValue()][coord[1].intValue()] = 4;
+
+		long[][] cellLines = new long[COLUMNS * COLUMN_BITS][];
+		for (int cell = 0; cell < cellLines.length; cell++) {
+			int count = 0;
+			for (int l = 0; l < lineCount; l++) {
+				if ((lines[l] >>> cell & 1) != 0) {
+					++count;
+				}
+			}
+			cellLines[cell] = new long[count];
+			count = 0;
+			for (int l = 0; l < lineCount; l++) {
+				if ((lines[l] >>> cell & 1) != 0) {
+					cellLines[cell][count++] = lines[l];
 				}
 			}
 		}
+		return cellLines;
 	}
 }
\ No newline at end of file
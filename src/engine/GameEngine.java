@@ -4,70 +4,51 @@ package engine;
  * Version 3
  */
 
+import java.util.Arrays;
+
 import ai.Player;
-import java.util.Stack;
+import metrics.DiscEvent;
+import metrics.GameOverEvent;
 
 public class GameEngine {
-	// game board starts at 0,0 in the top left corner
-	private static final int TOP_ROW = 0;
-	private static final int FAR_LEFT_COL = 0;
-
-	private static GameEngine engine = null;
-	private GameBoard board;
+	private final GameBoard board;
 	private Player p1, p2, currentPlayer;
 	// the column that was last clicked by a user
 	private Move lastColumnClicked = null;
-	private Stack<Integer[]> stack;
-
-	/**
-	 * Denotes the different ways the board (or 2d array) can be searched from a
-	 * given position. Each value represents a step in a direction one can take when
-	 * searching a direction. In other words, currentPos += SearchDir.SomeValue
-	 * (adds/subtracts 1)
-	 */
-
-	private enum SearchDir {
-		// game board starts at 0,0 in the top left corner
-		None(0), // don't search either direction
-		Left(-1), Right(1), Down(1), // the "last" row is first position filled and not last filled
-		Up(-1); // the top of the board is the last open spot in the column
-		private int value;
-
-		SearchDir(int value) {
-			this.value = value;
-		}
-
-		public int getValue() {
-			return value;
-		}
-	}
+	// the four cells of the last winning line as a bitboard mask, 0 if none
+	private long winningLine = 0;
+	// the board after the last change, replaced rather than changed
+	private volatile BoardSnapshot snapshot = BoardSnapshot.EMPTY;
+	// the columns played so far, who played the first one and when
+	private final int[] history = new int[BoardSnapshot.ROWS * BoardSnapshot.COLUMNS];
+	private int moveCount = 0;
+	private int firstPlayer = 0;
+	private long startMillis = 0;
 
 	/**
-	 * Private constructor, use getInstance instead
+	 * Creates a game on its own empty board. Engines share no state, so any
+	 * number of games can be played at once
 	 *
 	 * @param p1 - player 1
 	 * @param p2 - player 2
 	 */
 	public GameEngine(Player p1, Player p2) {
-		board = GameBoard.getInstance();
-		this.p1 = p1;
-		this.p2 = p2;
-		currentPlayer = this.p1;
+		this(p1, p2, new GameBoard());
 	}
 
 	/**
-	 * Singleton for GameEngine. Gets an instance of the game engine or creates a
-	 * new one.
+	 * Creates a game on the given board
 	 *
-	 * @param p1 - player 1
-	 * @param p2 - player 2
-	 * @return a game instance
+	 * @param p1    - player 1
+	 * @param p2    - player 2
+	 * @param board - the board to play on, not shared with another engine
 	 */
-	protected static GameEngine getInstance(Player p1, Player p2) {
-		if (engine == null) {
-			engine = new GameEngine(p1, p2);
-		}
-		return engine;
+	public GameEngine(Player p1, Player p2, GameBoard board) {
+		this.board = board;
+		this.p1 = p1;
+		this.p2 = p2;
+		currentPlayer = this.p1;
+		publish();
 	}
 
 	/**
@@ -79,156 +60,119 @@ public class GameEngine {
 	 * @throws OutsideBoardException on invalid (out of bounds or column full)
 	 */
 	protected boolean putDisc(Move move) throws OutsideBoardException {
-		if (board.putDisc(currentPlayer.getInt(), move.getPosition())) {
+		DiscEvent event = new DiscEvent();
+		event.begin();
+		int player = currentPlayer.getInt();
+		boolean accepted = board.putDisc(player, move.getPosition());
+
+		if (accepted) {
+			if (moveCount == 0) {
+				firstPlayer = player;
+				startMillis = System.currentTimeMillis();
+			}
+			history[moveCount++] = move.getPosition();
 			lastColumnClicked = move;
 			nextTurn();
-			return true;
-		} else {
-			return false;
+			publish();
 		}
-	}
 
-	protected Stack<Integer[]> getWin() {
-		return stack;
+		event.end();
+		if (event.shouldCommit()) {
+			event.player = player;
+			event.column = move.getPosition();
+			event.accepted = accepted;
+			event.commit();
+		}
+		return accepted;
 	}
 
 	/**
-	 * Switches turns to the next player
+	 * The cells of the winning line found by the last isGameOver
+	 *
+	 * @return the four cells as a bitboard mask (see GameBoard), 0 if there is no winner
 	 */
-	private void nextTurn() {
-		currentPlayer = currentPlayer == p1 ? p2 : p1;
+	protected long getWin() {
+		return winningLine;
 	}
 
 	/**
-	 * Looks for a winner in all directions based on last clicked column
+	 * The board as it is now. It never changes, a new one is made after every
+	 * disc, so it can be handed to bots or read from other threads as it is
 	 *
-	 * @return true if a winner is found
+	 * @return the latest snapshot of the board
 	 */
-	private boolean declareWinner() {
-		try {
-			stack = new Stack<Integer[]>();
-			// search to the left and right for a connect four
-			int rowPieces = findWinner(SearchDir.Right, SearchDir.None) + findWinner(SearchDir.Left, SearchDir.None)
-					- 1;
-			if (rowPieces >= 4) {
-				board.setWinningRow(stack);
-				return true;
-			}
-			stack = new Stack<Integer[]>();
-			// search up and down for a connect four
-			int columnPieces = findWinner(SearchDir.None, SearchDir.Down) + findWinner(SearchDir.None, SearchDir.Up)
-					- 1;
-			if (columnPieces >= 4) {
-				board.setWinningRow(stack);
-				return true;
-			}
-			stack = new Stack<Integer[]>();
-			// search diagonally to the right for a connect four
-			int backSlashPieces = findWinner(SearchDir.Right, SearchDir.Down) + findWinner(SearchDir.Left, SearchDir.Up)
-					- 1;
-			if (backSlashPieces >= 4) {
-				board.setWinningRow(stack);
-				return true;
-			}
-			stack = new Stack<Integer[]>();
-			// search diagonally to the left for a connect four
-			int foreSlashPieces = findWinner(SearchDir.Right, SearchDir.Up) + findWinner(SearchDir.Left, SearchDir.Down)
-					- 1;
-			if (foreSlashPieces >= 4) {
-				board.setWinningRow(stack);
-				return true;
-			}
-		} catch (OutsideBoardException ignored) {
+	public BoardSnapshot getSnapshot() {
+		return snapshot;
+	}
 
-		}
-		stack = new Stack<Integer[]>();
-		return false;
+	/**
+	 * Replaces the snapshot with one of the board as it is now
+	 */
+	private void publish() {
+		int last = lastColumnClicked == null ? -1 : lastColumnClicked.getPosition();
+		snapshot = new BoardSnapshot(board.getDiscs(1), board.getDiscs(2), winningLine, currentPlayer.getInt(), last);
 	}
 
 	/**
-	 * Searches a given direction for a connect four on the game board
-	 *
-	 * @param horzSearchDir - the current horizontal direction to search (left or
-	 *                      right or none)
-	 * @param vertSearchDir - the current vertical direction to search (up or down
-	 *                      or none)
-	 * @return the number of like player discs in a direction (4 being a winner)
-	 *
-	 * @throws OutsideBoardException thrown if it tries to search out of bounds
+	 * Switches turns to the next player
 	 */
-	private int findWinner(SearchDir horzSearchDir, SearchDir vertSearchDir) throws OutsideBoardException {
-		int lastMoveColumn = lastColumnClicked.getPosition();
-		int lastMoveRow = board.getRowNumber() - board.getColumnHeight(lastMoveColumn);
-
-		int curRow = lastMoveRow;
-		int curCol = lastMoveColumn;
-		int count = 0;
-
-		do {
-			Integer[] coord = { curRow, curCol };
-			stack.push(coord);
-			curRow += vertSearchDir.getValue();
-			curCol += horzSearchDir.getValue();
-			++count;
-		} while (count < 4 && !outOfBounds(curRow, curCol)
-				&& samePosition(lastMoveColumn, lastMoveRow, curRow, curCol));
-		return count;
+	private void nextTurn() {
+		currentPlayer = currentPlayer == p1 ? p2 : p1;
 	}
 
 	/**
-	 * Is the current position outside of the board?
+	 * Looks for a winner along the lines through the last disc played
 	 *
-	 * @param curRow - row in question
-	 * @param curCol - column in question
-	 * @return true if position is out of bounds for the row/column
+	 * @return true if a winner is found
 	 */
-	private boolean outOfBounds(int curRow, int curCol) {
-		return curRow < TOP_ROW || pastLastRow(curRow) || curCol < FAR_LEFT_COL || pastLastColumn(curCol);
+	private boolean declareWinner() {
+		if (lastColumnClicked == null) {
+			winningLine = 0;
+			return false;
+		}
+		winningLine = board.findWinningLine(lastColumnClicked.getPosition());
+		if (winningLine != 0) {
+			board.setWinningRow(winningLine);
+			publish();
+			return true;
+		}
+		return false;
 	}
 
 	/**
-	 * Is the current position the same as the last clicked position by the player?
-	 *
-	 * @param lastMoveColumn - the last column position clicked
-	 * @param lastMoveRow    - the last row position clicked
-	 * @param curRow         - the current row that is being searched
-	 * @param curCol         - the current column that is being searched
-	 * @return true if the positions are identical
-	 *
-	 * @throws OutsideBoardException if either position is outside of the board
+	 * What was the last move made?
+	 * 
+	 * @return Move
 	 */
-	private boolean samePosition(int lastMoveColumn, int lastMoveRow, int curRow, int curCol)
-			throws OutsideBoardException {
-		return board.getBoardPos(curRow, curCol) == board.getBoardPos(lastMoveRow, lastMoveColumn);
+	protected Move getLastMove() {
+		return lastColumnClicked;
 	}
 
 	/**
-	 * Is the current position past the far right in the row?
+	 * The columns played so far, in order
 	 *
-	 * @param curCol - the current column in question
-	 * @return true if this is the far right column
+	 * @return a copy of the moves
 	 */
-	private boolean pastLastColumn(int curCol) {
-		return curCol == board.getColumnNumber();
+	protected int[] getMoves() {
+		return Arrays.copyOf(history, moveCount);
 	}
 
 	/**
-	 * Is the current position the past last (row empty) in the column?
+	 * Who played the first disc?
 	 *
-	 * @param curRow - the current row in question
-	 * @return true if this is the last row
+	 * @return the player number, 0 if no disc has been played
 	 */
-	private boolean pastLastRow(int curRow) {
-		return curRow == board.getRowNumber();
+	protected int getFirstPlayer() {
+		return firstPlayer;
 	}
 
 	/**
-	 * What was the last move made?
-	 * 
-	 * @return Move
+	 * When was the first disc played?
+	 *
+	 * @return the time in ms since 1970, 0 if no disc has been played
 	 */
-	protected Move getLastMove() {
-		return lastColumnClicked;
+	protected long getStartMillis() {
+		return startMillis;
 	}
 
 	/**
@@ -239,20 +183,31 @@ public class GameEngine {
 	 *         over.
 	 */
 	protected Player isGameOver() {
-		if (board.isBoardFull()) {
-			return new Player(0);
-		}
+		GameOverEvent event = new GameOverEvent();
+		event.begin();
+		Player result = null;
+
+		// the last disc can fill the board and win at the same time, so the win is checked first
 		if (declareWinner()) {
 
 			if (currentPlayer == p1) {
 				++p2.wins;
-				return p2;
+				result = p2;
 			} else {
 				++p1.wins;
-				return p1;
+				result = p1;
 			}
+		} else if (board.isBoardFull()) {
+			result = new Player(0);
+		}
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.column = lastColumnClicked == null ? -1 : lastColumnClicked.getPosition();
+			event.result = result == null ? -1 : result.getInt();
+			event.commit();
 		}
-		return null;
+		return result;
 	}
 
 	/**
@@ -275,6 +230,7 @@ public class GameEngine {
 
 	protected void setCurrentPlayer(int p) {
 		currentPlayer = p == 1 ? p1 : p2;
+		publish();
 	}
 
 	protected Player getP1() {
@@ -306,6 +262,11 @@ public class GameEngine {
 	protected void clearBoard() {
 		board.clearBoard();
 		lastColumnClicked = null;
+		winningLine = 0;
+		moveCount = 0;
+		firstPlayer = 0;
+		startMillis = 0;
+		publish();
 	}
 
 	/**
@@ -319,9 +280,11 @@ public class GameEngine {
 
 	protected void p1Turn() {
 		currentPlayer = p1;
+		publish();
 	}
 
 	protected void p2Turn() {
 		currentPlayer = p2;
+		publish();
 	}
 }
\ No newline at end of file
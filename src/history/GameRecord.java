@@ -0,0 +1,325 @@
+package history;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import engine.BoardSnapshot;
+
+/**
+ * One finished game: who played, who won, when, and the columns played.
+ *
+ * A record is stored as:
+ *
+ *   int    length of the rest of the record in bytes
+ *   byte   player who moved first in the low two bits, result in the next two
+ *   byte   number of moves
+ *   long   start time, ms since 1970
+ *   long   end time, ms since 1970
+ *   byte   length of player 1's name in UTF-8, then the name
+ *   byte   length of player 2's name in UTF-8, then the name
+ *   bytes  the columns, 3 bits each, packed from the lowest bit of the first byte up
+ *
+ * so a full game takes at most 16 bytes of moves.
+ */
+public final class GameRecord {
+
+	public static final int DRAW = 0; //Result of a game nobody won, otherwise the winner's number
+
+	static final int FIXED_BYTES = 4 + 1 + 1 + 8 + 8 + 1 + 1; //Everything but the names and moves
+	private static final int MAX_NAME_BYTES = 255;
+	private static final int MOVE_BITS = 3;
+	private static final int MAX_MOVES = BoardSnapshot.ROWS * BoardSnapshot.COLUMNS;
+	static final int MAX_BYTES = FIXED_BYTES + 2 * MAX_NAME_BYTES + (MAX_MOVES * MOVE_BITS + 7) / 8; //A record is never longer
+	private static final int COLUMN_BITS = BoardSnapshot.ROWS + 1; //Bits per column in a snapshot
+
+	private final String player1;
+	private final String player2;
+	private final int firstPlayer;
+	private final int result;
+	private final long startMillis;
+	private final long endMillis;
+	private final int moveCount;
+	private final byte[] moves; //Packed columns
+
+	private BoardSnapshot[] snapshots = null; //The board after each move, worked out the first time one is asked for
+
+	/**
+	 * @param player1 name of player 1, cut down to 255 bytes of UTF-8
+	 * @param player2 name of player 2, cut down to 255 bytes of UTF-8
+	 * @param firstPlayer the player who moved first, 1 or 2
+	 * @param result the winner's number, or DRAW
+	 * @param startMillis when the game started, ms since 1970
+	 * @param endMillis when the game ended, ms since 1970
+	 * @param columns the columns played, in order
+	 */
+	public GameRecord(String player1, String player2, int firstPlayer, int result, long startMillis, long endMillis,
+			int[] columns) {
+		this(player1, player2, firstPlayer, result, startMillis, endMillis, columns.length, pack(columns));
+	}
+
+	private GameRecord(String player1, String player2, int firstPlayer, int result, long startMillis, long endMillis,
+			int moveCount, byte[] moves) {
+		this.player1 = player1;
+		this.player2 = player2;
+		this.firstPlayer = firstPlayer;
+		this.result = result;
+		this.startMillis = startMillis;
+		this.endMillis = endMillis;
+		this.moveCount = moveCount;
+		this.moves = moves;
+	}
+
+	public String getPlayer1() {
+		return player1;
+	}
+
+	public String getPlayer2() {
+		return player2;
+	}
+
+	/**
+	 * Returns the player who moved first, 1 or 2
+	 */
+	public int getFirstPlayer() {
+		return firstPlayer;
+	}
+
+	/**
+	 * Returns the winner's number, or DRAW
+	 */
+	public int getResult() {
+		return result;
+	}
+
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public long getEndMillis() {
+		return endMillis;
+	}
+
+	/**
+	 * Returns the number of moves played
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Returns the column of a move
+	 *
+	 * @param ply the move, 0 for the first one
+	 */
+	public int getColumn(int ply) {
+		return column(moves, ply);
+	}
+
+	/**
+	 * Returns the columns played, in order
+	 */
+	public int[] getMoves() {
+		int[] columns = new int[moveCount];
+		for(int ply = 0; ply < moveCount; ply++)
+			columns[ply] = getColumn(ply);
+		return columns;
+	}
+
+	/**
+	 * Returns the board after the given number of moves. The boards for every
+	 * move are worked out together the first time, after that any move can be
+	 * jumped to straight away
+	 *
+	 * @param ply from 0 for the empty board up to the number of moves
+	 */
+	public synchronized BoardSnapshot getSnapshot(int ply) {
+		if(snapshots == null)
+			snapshots = replay();
+		return snapshots[ply];
+	}
+
+	/*
+	 * Plays the game through once, keeping the board after every move. The
+	 * last board is given the winning lines, if there are any
+	 */
+	private BoardSnapshot[] replay() {
+		BoardSnapshot[] boards = new BoardSnapshot[moveCount + 1];
+		long[] discs = new long[2];
+		int[] heights = new int[BoardSnapshot.COLUMNS];
+		int player = firstPlayer;
+
+		boards[0] = new BoardSnapshot(0, 0, 0, player, -1);
+		for(int ply = 0; ply < moveCount; ply++) {
+			int col = getColumn(ply);
+			discs[player - 1] |= 1L << (col * COLUMN_BITS + heights[col]++);
+			player = 3 - player;
+
+			long line = ply == moveCount - 1 && result != DRAW ? winningLines(discs[result - 1]) : 0;
+			boards[ply + 1] = new BoardSnapshot(discs[0], discs[1], line, player, col);
+		}
+		return boards;
+	}
+
+	/*
+	 * Returns every cell that is part of a line of four. The game stops at the
+	 * first four, so all of them go through the last disc
+	 */
+	private static long winningLines(long discs) {
+		long cells = 0;
+		for(int step : new int[] { 1, COLUMN_BITS, COLUMN_BITS - 1, COLUMN_BITS + 1 }) {
+			long pairs = discs & (discs >>> step);
+			long starts = pairs & (pairs >>> 2 * step);
+			cells |= starts | starts << step | starts << 2 * step | starts << 3 * step;
+		}
+		return cells;
+	}
+
+	/**
+	 * Returns the number of bytes the record takes up when written
+	 */
+	public int encodedSize() {
+		return FIXED_BYTES + name(player1).length + name(player2).length + moves.length;
+	}
+
+	/**
+	 * Writes the record at the buffer's position
+	 */
+	public void write(ByteBuffer buf) {
+		byte[] name1 = name(player1), name2 = name(player2);
+
+		buf.putInt(encodedSize() - 4);
+		buf.put((byte) (firstPlayer | result << 2));
+		buf.put((byte) moveCount);
+		buf.putLong(startMillis);
+		buf.putLong(endMillis);
+		buf.put((byte) name1.length);
+		buf.put(name1);
+		buf.put((byte) name2.length);
+		buf.put(name2);
+		buf.put(moves);
+	}
+
+	/**
+	 * Reads the record at an offset in the buffer, without moving the buffer's position
+	 *
+	 * @param buf the buffer, usually a mapped store file
+	 * @param offset where the record starts
+	 */
+	public static GameRecord read(ByteBuffer buf, int offset) {
+		int pos = offset + 4;
+		int flags = buf.get(pos++);
+		int moveCount = buf.get(pos++) & 0xFF;
+		long start = buf.getLong(pos);
+		long end = buf.getLong(pos + 8);
+		pos += 16;
+
+		byte[] name1 = new byte[buf.get(pos++) & 0xFF];
+		buf.get(pos, name1);
+		pos += name1.length;
+		byte[] name2 = new byte[buf.get(pos++) & 0xFF];
+		buf.get(pos, name2);
+		pos += name2.length;
+
+		byte[] moves = new byte[packedBytes(moveCount)];
+		buf.get(pos, moves);
+
+		return new GameRecord(new String(name1, StandardCharsets.UTF_8), new String(name2, StandardCharsets.UTF_8),
+				flags & 3, flags >>> 2 & 3, start, end, moveCount, moves);
+	}
+
+	/**
+	 * Checks that the bytes at an offset in the buffer are a whole record that
+	 * can be replayed: the players and result are in range, the names and moves
+	 * fill the record exactly, and every move is a column on the board with
+	 * room left in it. Recovery treats a record that fails like one that was
+	 * only partly written
+	 *
+	 * @param buf the buffer, its limit is taken as the end of the data
+	 * @param offset where the record starts
+	 */
+	static boolean isValid(ByteBuffer buf, int offset) {
+		if(offset + FIXED_BYTES > buf.limit())
+			return false;
+		int length = buf.getInt(offset);
+		if(length < FIXED_BYTES - 4 || length > MAX_BYTES - 4 || offset + 4 + length > buf.limit())
+			return false;
+		int end = offset + 4 + length;
+
+		int flags = buf.get(offset + 4) & 0xFF;
+		int firstPlayer = flags & 3, result = flags >>> 2 & 3;
+		int moveCount = buf.get(offset + 5) & 0xFF;
+		if(flags >>> 4 != 0 || firstPlayer < 1 || firstPlayer > 2 || result > 2 || moveCount > MAX_MOVES)
+			return false;
+
+		//Stepping over the names, each one has to fit before the moves
+		int pos = offset + FIXED_BYTES - 2; //The first name's length
+		for(int i = 0; i < 2; i++) {
+			if(pos >= end)
+				return false;
+			pos += 1 + (buf.get(pos) & 0xFF);
+		}
+		if(pos + packedBytes(moveCount) != end)
+			return false;
+
+		byte[] moves = new byte[packedBytes(moveCount)];
+		buf.get(pos, moves);
+		int[] heights = new int[BoardSnapshot.COLUMNS];
+		for(int ply = 0; ply < moveCount; ply++) {
+			int col = column(moves, ply);
+			if(col >= BoardSnapshot.COLUMNS || heights[col]++ == BoardSnapshot.ROWS)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		String outcome = result == DRAW ? "draw" : (result == 1 ? player1 : player2) + " won";
+		return player1 + " vs " + player2 + ", " + outcome + " in " + moveCount + " moves";
+	}
+
+	/*
+	 * Packs the columns into 3 bits each
+	 */
+	private static byte[] pack(int[] columns) {
+		byte[] packed = new byte[packedBytes(columns.length)];
+		for(int ply = 0; ply < columns.length; ply++) {
+			int bit = ply * MOVE_BITS;
+			int value = (columns[ply] & 7) << (bit % 8);
+			packed[bit / 8] |= (byte) value;
+			if(bit % 8 > 8 - MOVE_BITS)
+				packed[bit / 8 + 1] |= (byte) (value >>> 8);
+		}
+		return packed;
+	}
+
+	/*
+	 * Returns the column of a move from the packed columns
+	 */
+	private static int column(byte[] moves, int ply) {
+		int bit = ply * MOVE_BITS;
+		int pair = (moves[bit / 8] & 0xFF) | (bit / 8 + 1 < moves.length ? (moves[bit / 8 + 1] & 0xFF) << 8 : 0);
+		return pair >>> (bit % 8) & 7;
+	}
+
+	private static int packedBytes(int moveCount) {
+		return (moveCount * MOVE_BITS + 7) / 8;
+	}
+
+	/*
+	 * Returns the name as UTF-8, cut down to fit its length byte
+	 */
+	private static byte[] name(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length <= MAX_NAME_BYTES)
+			return bytes;
+
+		//Cutting between characters, not in the middle of one
+		int length = MAX_NAME_BYTES;
+		while((bytes[length] & 0xC0) == 0x80)
+			length--;
+		byte[] cut = new byte[length];
+		System.arraycopy(bytes, 0, cut, 0, length);
+		return cut;
+	}
+}
@@ -0,0 +1,262 @@
+package history;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps finished games in a file that is only ever added to.
+ *
+ * The data file starts with a magic number and version, followed by the games
+ * one after the other as GameRecord writes them. Next to it is an index file,
+ * with the offset of each game as a long, so the n-th game can be found
+ * without reading the ones before it. Both files are memory mapped for
+ * reading.
+ *
+ * New games are held in memory and written together, with one fsync, once
+ * SYNC_GAMES of them are waiting or every SYNC_MILLIS, whichever comes first,
+ * and on close. The data is synced before the index, so the index never points
+ * past the data. When the store is opened, games missing from the index are
+ * found by reading the data after the last indexed game, and a game that was
+ * only partly written or is damaged is cut off, along with everything after it.
+ */
+public class GameStore implements Closeable {
+
+	public static final int SYNC_GAMES = 32;
+	public static final long SYNC_MILLIS = 2000;
+
+	private static final int MAGIC = 0x43344752; //"C4GR"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 8;
+
+	private final FileChannel data;
+	private final FileChannel index;
+	private final List<GameRecord> pending = new ArrayList<>(); //Added but not written yet
+	private final ScheduledExecutorService syncer;
+
+	private long dataSize; //Bytes written to the data file
+	private int written; //Games written to the files
+
+	//Read-only maps of the files, made again when more games are written than they cover
+	private MappedByteBuffer dataMap = null;
+	private MappedByteBuffer indexMap = null;
+	private int mapped = 0; //Games the maps cover
+
+	/**
+	 * Opens the store, creating it if it does not exist
+	 *
+	 * @param file the data file, the index is kept in the same place with .idx added to the name
+	 * @throws IOException if the files cannot be opened or the data file is not a store
+	 */
+	public GameStore(File file) throws IOException {
+		data = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		index = FileChannel.open(new File(file.getPath() + ".idx").toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			recover();
+		} catch(IOException e) {
+			data.close();
+			index.close();
+			throw e;
+		}
+
+		syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "game-store-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		syncer.scheduleWithFixedDelay(this::syncQuietly, SYNC_MILLIS, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Adds a game to the end of the store. It can be read back straight away,
+	 * but only reaches the disk with the next sync
+	 */
+	public synchronized void append(GameRecord game) throws IOException {
+		pending.add(game);
+		if(pending.size() >= SYNC_GAMES)
+			sync();
+	}
+
+	/**
+	 * Writes the waiting games and forces them to the disk
+	 */
+	public synchronized void sync() throws IOException {
+		if(pending.isEmpty())
+			return;
+
+		int size = 0;
+		for(GameRecord game : pending)
+			size += game.encodedSize();
+
+		ByteBuffer records = ByteBuffer.allocate(size);
+		ByteBuffer offsets = ByteBuffer.allocate(pending.size() * Long.BYTES);
+		for(GameRecord game : pending) {
+			offsets.putLong(dataSize + records.position());
+			game.write(records);
+		}
+
+		records.flip();
+		writeFully(data, records, dataSize);
+		data.force(false);
+
+		offsets.flip();
+		writeFully(index, offsets, (long) written * Long.BYTES);
+		index.force(false);
+
+		dataSize += size;
+		written += pending.size();
+		pending.clear();
+	}
+
+	/**
+	 * Returns the number of games in the store, including ones not written yet
+	 */
+	public synchronized int size() {
+		return written + pending.size();
+	}
+
+	/**
+	 * Returns a game, read from the mapped files
+	 *
+	 * @param n the game, 0 for the first one
+	 */
+	public synchronized GameRecord get(int n) throws IOException {
+		if(n < 0 || n >= size())
+			throw new IndexOutOfBoundsException("Game " + n + " of " + size());
+		if(n >= written)
+			return pending.get(n - written);
+
+		if(n >= mapped) {
+			dataMap = data.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+			indexMap = index.map(FileChannel.MapMode.READ_ONLY, 0, (long) written * Long.BYTES);
+			mapped = written;
+		}
+		return GameRecord.read(dataMap, (int) indexMap.getLong(n * Long.BYTES));
+	}
+
+	/**
+	 * Writes the waiting games and closes the files
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(!data.isOpen())
+			return;
+		syncer.shutdown();
+		try {
+			sync();
+		} finally {
+			data.close();
+			index.close();
+		}
+	}
+
+	/*
+	 * Checks the files when they are opened. Writes the header of a new store,
+	 * indexes games the index is missing and cuts off a game that was not
+	 * finished being written
+	 */
+	private void recover() throws IOException {
+		long size = data.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+		if(size == 0) {
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			writeFully(data, header, 0);
+			data.force(false);
+			index.truncate(0);
+			dataSize = HEADER_BYTES;
+			return;
+		}
+
+		if(size < HEADER_BYTES)
+			throw new IOException("Not a game store, the file is too short");
+		data.read(header, 0);
+		header.flip();
+		if(header.getInt() != MAGIC)
+			throw new IOException("Not a game store");
+		int version = header.getInt();
+		if(version != VERSION)
+			throw new IOException("Game store version " + version + " is not supported");
+
+		//Keeping the index entries that point at whole games, in order
+		long entries = index.size() / Long.BYTES;
+		ByteBuffer offsets = ByteBuffer.allocate((int) entries * Long.BYTES);
+		index.read(offsets, 0);
+		offsets.flip();
+
+		long end = HEADER_BYTES;
+		int good = 0;
+		while(offsets.remaining() >= Long.BYTES) {
+			long offset = offsets.getLong();
+			long next = recordEnd(offset, size);
+			if(offset != end || next == -1)
+				break;
+			end = next;
+			good++;
+		}
+
+		//Reading on for games that were written but not indexed
+		ByteBuffer missing = ByteBuffer.allocate(Long.BYTES);
+		long next;
+		while((next = recordEnd(end, size)) != -1) {
+			missing.clear();
+			missing.putLong(end).flip();
+			writeFully(index, missing, (long) good * Long.BYTES);
+			end = next;
+			good++;
+		}
+
+		index.truncate((long) good * Long.BYTES);
+		data.truncate(end);
+		index.force(false);
+		data.force(false);
+
+		dataSize = end;
+		written = good;
+	}
+
+	/*
+	 * Returns where the record at the offset ends, or -1 if it does not fit in
+	 * the file or is damaged
+	 */
+	private long recordEnd(long offset, long size) throws IOException {
+		if(offset + GameRecord.FIXED_BYTES > size)
+			return -1;
+		ByteBuffer record = ByteBuffer.allocate((int) Math.min(GameRecord.MAX_BYTES, size - offset));
+		while(record.hasRemaining()) {
+			if(data.read(record, offset + record.position()) <= 0)
+				break;
+		}
+		record.flip();
+
+		return GameRecord.isValid(record, 0) ? offset + 4 + record.getInt(0) : -1;
+	}
+
+	/*
+	 * Syncs on the timer thread, where there is no one to tell about an error
+	 * except the console
+	 */
+	private void syncQuietly() {
+		try {
+			sync();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while(buf.hasRemaining())
+			position += channel.write(buf, position);
+	}
+}
@@ -0,0 +1,28 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the game engine putting a disc on the board
+ */
+@Name("connect4.PutDisc")
+@Label("Put Disc")
+@Description("The game engine putting a disc in a column")
+@Category({ "Connect 4", "Engine" })
+@StackTrace(false)
+public class DiscEvent extends jdk.jfr.Event {
+
+	@Label("Player")
+	public int player;
+
+	@Label("Column")
+	public int column;
+
+	@Label("Accepted")
+	@Description("False if the column was full")
+	public boolean accepted;
+}
@@ -0,0 +1,27 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the game engine checking whether the last disc
+ * ended the game
+ */
+@Name("connect4.GameOverCheck")
+@Label("Game Over Check")
+@Description("The game engine checking for a win or a draw after a disc")
+@Category({ "Connect 4", "Engine" })
+@StackTrace(false)
+public class GameOverEvent extends jdk.jfr.Event {
+
+	@Label("Column")
+	@Description("The column of the last disc")
+	public int column;
+
+	@Label("Result")
+	@Description("The winner's player number, 0 for a draw, -1 if the game goes on")
+	public int result;
+}
@@ -0,0 +1,96 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts values in buckets that double in size: bucket 0 holds 0, and bucket
+ * k holds the values from 2^(k-1) up to 2^k. Recording is lock free and cheap
+ * enough to do from several searching threads at once.
+ */
+public class Histogram {
+
+	public static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Counts one value, negative values are counted as 0
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Returns the number of values counted
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the sum of the values counted
+	 */
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * Returns the average of the values counted, 0 if there are none
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	/**
+	 * Returns the largest value counted
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns a value that the given share of values are at most, as the upper
+	 * end of the bucket it falls in, but never more than the largest value
+	 *
+	 * @param fraction from 0 to 1, 0.5 for the median
+	 */
+	public long getPercentile(double fraction) {
+		long target = Math.max(1, (long) Math.ceil(count.sum() * fraction));
+		long seen = 0;
+
+		for(int k = 0; k < BUCKETS; k++) {
+			seen += buckets.get(k);
+			if(seen >= target)
+				return k == 0 ? 0 : Math.min(k == 63 ? Long.MAX_VALUE : 1L << k, getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns the number of values in a bucket
+	 */
+	public long getBucket(int k) {
+		return buckets.get(k);
+	}
+
+	/**
+	 * Forgets every value counted
+	 */
+	public void reset() {
+		for(int k = 0; k < BUCKETS; k++)
+			buckets.set(k, 0);
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+}
@@ -0,0 +1,57 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one SearchMetrics for each kind of bot and publishes it on the
+ * platform MBean server as connect4:type=SearchMetrics,name=the bot's name,
+ * so a tool like JConsole or a JMX scraper can read it while the game runs.
+ */
+public final class Metrics {
+
+	public static final String DOMAIN = "connect4";
+
+	private static final Map<String, SearchMetrics> searches = new ConcurrentHashMap<>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the metrics for a kind of bot, making and publishing them the
+	 * first time they are asked for
+	 *
+	 * @param name the bot's name, like HardBot
+	 */
+	public static SearchMetrics search(String name) {
+		return searches.computeIfAbsent(name, Metrics::register);
+	}
+
+	/**
+	 * Returns the metrics of every kind of bot that has asked for them
+	 */
+	public static Map<String, SearchMetrics> getSearches() {
+		return searches;
+	}
+
+	/*
+	 * Makes the metrics and publishes them. If they cannot be published they
+	 * are still counted, there is just no way to read them over JMX
+	 */
+	private static SearchMetrics register(String name) {
+		SearchMetrics metrics = new SearchMetrics(name);
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=SearchMetrics,name=" + ObjectName.quote(name));
+			if(!server.isRegistered(objectName))
+				server.registerMBean(metrics, objectName);
+		} catch(JMException | SecurityException e) {
+			e.printStackTrace();
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,68 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one call to a bot's move. The bot fills in what
+ * its search found; moves made without a search, like book moves, leave the
+ * search fields at -1.
+ */
+@Name("connect4.Move")
+@Label("Bot Move")
+@Description("A bot choosing its move")
+@Category({ "Connect 4", "AI" })
+@StackTrace(false)
+public class MoveEvent extends jdk.jfr.Event {
+
+	@Label("Bot")
+	public String bot;
+
+	@Label("Player")
+	public int player;
+
+	@Label("Column")
+	@Description("The column the bot chose")
+	public int column = -1;
+
+	@Label("Depth")
+	@Description("How many moves ahead the search looked")
+	public int depth = -1;
+
+	@Label("Nodes")
+	@Description("Positions the search looked at")
+	public long nodes = -1;
+
+	@Label("Score")
+	@Description("The search's score for the chosen column")
+	public int score = -1;
+
+	/**
+	 * Ends the event and records it if recording is on
+	 *
+	 * @param bot the bot's class name
+	 * @param player the bot's player number
+	 * @param column the column chosen
+	 */
+	public void finish(String bot, int player, int column) {
+		end();
+		if(shouldCommit()) {
+			this.bot = bot;
+			this.player = player;
+			this.column = column;
+			commit();
+		}
+	}
+
+	/**
+	 * Fills in the search results
+	 */
+	public void setSearch(int depth, long nodes, int score) {
+		this.depth = depth;
+		this.nodes = nodes;
+		this.score = score;
+	}
+}
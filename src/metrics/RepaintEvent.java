@@ -0,0 +1,22 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the GUI redrawing the board
+ */
+@Name("connect4.BoardRepaint")
+@Label("Board Repaint")
+@Description("The GUI updating the board's cells")
+@Category({ "Connect 4", "GUI" })
+@StackTrace(false)
+public class RepaintEvent extends jdk.jfr.Event {
+
+	@Label("Cells")
+	@Description("Cells updated")
+	public int cells;
+}
@@ -0,0 +1,36 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one finished depth of an iterative deepening
+ * search, timed from the start of that depth
+ */
+@Name("connect4.SearchDepth")
+@Label("Search Depth")
+@Description("An iterative deepening search finishing one depth")
+@Category({ "Connect 4", "AI" })
+@StackTrace(false)
+public class SearchDepthEvent extends jdk.jfr.Event {
+
+	@Label("Depth")
+	public int depth;
+
+	@Label("Best Column")
+	public int bestMove;
+
+	@Label("Score")
+	public int score;
+
+	@Label("Nodes")
+	@Description("Positions looked at for this depth")
+	public long nodes;
+
+	@Label("Discs")
+	@Description("Discs on the board at the root of the search")
+	public int discs;
+}
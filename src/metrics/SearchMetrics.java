@@ -0,0 +1,199 @@
+package metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one kind of bot's searches: how many moves it made, how many
+ * positions it looked at, how deep it went, how long each move took, how
+ * often the transposition table had the position and how often moves were
+ * cut off.
+ *
+ * The searches count in plain fields while they run and hand the totals over
+ * once per move, so the counters here are striped adders that many threads
+ * can add to without fighting over one memory location.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+	private final String name;
+
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder tableProbes = new LongAdder();
+	private final LongAdder tableHits = new LongAdder();
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder firstMoveCutoffs = new LongAdder();
+	private final LongAdder cutoffNodes = new LongAdder(); //Nodes of the searches that counted cutoffs
+	private final DoubleAdder branchingFactors = new DoubleAdder();
+	private final LongAdder branchingCount = new LongAdder();
+	private final Histogram moveMicros = new Histogram();
+	private final Histogram depths = new Histogram();
+
+	/**
+	 * @param name the name the metrics are published under
+	 */
+	public SearchMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Counts one move
+	 *
+	 * @param nanos how long the move took
+	 * @param nodes positions looked at
+	 * @param depth how many moves ahead the search got, -1 if it has no depth
+	 */
+	public void recordMove(long nanos, long nodes, int depth) {
+		moveMicros.record(nanos / 1000);
+		this.nodes.add(nodes);
+
+		if(depth >= 0)
+			depths.record(depth);
+	}
+
+	/**
+	 * Counts the effective branching factor of one move's search
+	 *
+	 * @param factor positions the last finished depth needed over the ones the
+	 *               depth before it needed, as Search works it out. 0 if the
+	 *               search did not finish two depths, which is not counted
+	 */
+	public void recordBranchingFactor(double factor) {
+		if(factor > 0) {
+			branchingFactors.add(factor);
+			branchingCount.increment();
+		}
+	}
+
+	/**
+	 * Counts transposition table lookups
+	 *
+	 * @param probes positions looked up
+	 * @param hits lookups that found the position
+	 */
+	public void recordTable(long probes, long hits) {
+		tableProbes.add(probes);
+		tableHits.add(hits);
+	}
+
+	/**
+	 * Counts cutoffs, moves good enough that the rest of the position's moves
+	 * did not need to be searched
+	 *
+	 * @param nodes positions the search looked at
+	 * @param cutoffs positions that had a cutoff
+	 * @param firstMoveCutoffs positions where the first move tried was the cutoff
+	 */
+	public void recordCutoffs(long nodes, long cutoffs, long firstMoveCutoffs) {
+		cutoffNodes.add(nodes);
+		this.cutoffs.add(cutoffs);
+		this.firstMoveCutoffs.add(firstMoveCutoffs);
+	}
+
+	/**
+	 * Returns the name the metrics are published under
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getMoves() {
+		return moveMicros.getCount();
+	}
+
+	@Override
+	public long getNodes() {
+		return nodes.sum();
+	}
+
+	@Override
+	public long getNodesPerSecond() {
+		long micros = moveMicros.getTotal();
+		return micros == 0 ? 0 : (long) (nodes.sum() * 1e6 / micros);
+	}
+
+	@Override
+	public double getMeanNodesPerMove() {
+		long moves = getMoves();
+		return moves == 0 ? 0 : (double) nodes.sum() / moves;
+	}
+
+	@Override
+	public double getMeanDepth() {
+		return depths.getMean();
+	}
+
+	@Override
+	public long getMaxDepth() {
+		return depths.getMax();
+	}
+
+	@Override
+	public double getMeanMoveMillis() {
+		return moveMicros.getMean() / 1000;
+	}
+
+	@Override
+	public double getMedianMoveMillis() {
+		return moveMicros.getPercentile(0.5) / 1000.0;
+	}
+
+	@Override
+	public double getP99MoveMillis() {
+		return moveMicros.getPercentile(0.99) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMoveMillis() {
+		return moveMicros.getMax() / 1000.0;
+	}
+
+	@Override
+	public double getTableHitRate() {
+		long probes = tableProbes.sum();
+		return probes == 0 ? 0 : (double) tableHits.sum() / probes;
+	}
+
+	@Override
+	public double getCutoffRate() {
+		long n = cutoffNodes.sum();
+		return n == 0 ? 0 : (double) cutoffs.sum() / n;
+	}
+
+	@Override
+	public double getFirstMoveCutoffRate() {
+		long c = cutoffs.sum();
+		return c == 0 ? 0 : (double) firstMoveCutoffs.sum() / c;
+	}
+
+	@Override
+	public double getBranchingFactor() {
+		long n = branchingCount.sum();
+		return n == 0 ? 0 : branchingFactors.sum() / n;
+	}
+
+	@Override
+	public void reset() {
+		nodes.reset();
+		tableProbes.reset();
+		tableHits.reset();
+		cutoffs.reset();
+		firstMoveCutoffs.reset();
+		cutoffNodes.reset();
+		branchingFactors.reset();
+		branchingCount.reset();
+		moveMicros.reset();
+		depths.reset();
+	}
+
+	/**
+	 * Returns the metrics as one line of text
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s: %d moves, %d nodes (%d/s), depth %.1f (max %d), %.1f ms/move (p99 %.1f), "
+				+ "table hits %.1f%%, cutoffs %.1f%% (%.1f%% first move), branching %.2f", name, getMoves(),
+				getNodes(), getNodesPerSecond(), getMeanDepth(), getMaxDepth(), getMeanMoveMillis(), getP99MoveMillis(),
+				getTableHitRate() * 100, getCutoffRate() * 100, getFirstMoveCutoffRate() * 100, getBranchingFactor());
+	}
+}
@@ -0,0 +1,44 @@
+package metrics;
+
+/**
+ * What SearchMetrics shows over JMX. Everything is counted since the bot
+ * started or since the last reset
+ */
+public interface SearchMetricsMBean {
+
+	long getMoves();
+
+	long getNodes();
+
+	long getNodesPerSecond();
+
+	double getMeanNodesPerMove();
+
+	double getMeanDepth();
+
+	long getMaxDepth();
+
+	double getMeanMoveMillis();
+
+	double getMedianMoveMillis();
+
+	double getP99MoveMillis();
+
+	double getMaxMoveMillis();
+
+	double getTableHitRate();
+
+	double getCutoffRate();
+
+	double getFirstMoveCutoffRate();
+
+	/**
+	 * Returns the mean effective branching factor over the moves that finished
+	 * at least two depths: how many times more positions a move's last finished
+	 * depth needed than the depth before it, counted on the main search only so
+	 * helper threads do not inflate it. 0 if no move has counted one
+	 */
+	double getBranchingFactor();
+
+	void reset();
+}
@@ -0,0 +1,97 @@
+package tournament;
+
+import metrics.Histogram;
+
+/**
+ * Counts how long a bot took for each move, in buckets that double in size:
+ * bucket k holds the moves that took from 2^(k-1) up to 2^k microseconds.
+ * Safe to record into from several games at once.
+ */
+public class LatencyHistogram {
+
+	private static final int BAR_WIDTH = 40; //Characters in the longest bar when printed
+
+	private final Histogram micros = new Histogram();
+
+	/**
+	 * Counts one move
+	 *
+	 * @param nanos how long the move took in ns
+	 */
+	public void record(long nanos) {
+		micros.record(nanos / 1000);
+	}
+
+	/**
+	 * Returns the number of moves counted
+	 */
+	public long getCount() {
+		return micros.getCount();
+	}
+
+	/**
+	 * Returns the average time of a move in ms
+	 */
+	public double getMeanMillis() {
+		return micros.getMean() / 1000;
+	}
+
+	/**
+	 * Returns the longest time a move took in ms
+	 */
+	public double getMaxMillis() {
+		return micros.getMax() / 1000.0;
+	}
+
+	/**
+	 * Returns the time in ms that the given share of moves took at most, as the
+	 * upper end of the bucket it falls in
+	 *
+	 * @param fraction from 0 to 1, 0.5 for the median
+	 */
+	public double getPercentileMillis(double fraction) {
+		return micros.getPercentile(fraction) / 1000.0;
+	}
+
+	/**
+	 * Returns the histogram as text, one line for each bucket from the first to
+	 * the last one with any moves in it
+	 */
+	public String format() {
+		int first = -1, last = -1;
+		long most = 0;
+		for(int k = 0; k < Histogram.BUCKETS; k++) {
+			long n = micros.getBucket(k);
+			if(n > 0) {
+				if(first == -1)
+					first = k;
+				last = k;
+				most = Math.max(most, n);
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for(int k = first; k <= last && k >= 0; k++) {
+			long n = micros.getBucket(k);
+			long low = k == 0 ? 0 : 1L << (k - 1);
+			int bar = (int) (n * BAR_WIDTH / most);
+
+			sb.append(String.format("    %8s - %-8s %8d  ", time(low), time(1L << k), n));
+			for(int i = 0; i < bar; i++)
+				sb.append('#');
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Writes a time in microseconds with the largest unit that fits
+	 */
+	private static String time(long micros) {
+		if(micros >= 1_000_000)
+			return micros / 1_000_000 + " s";
+		if(micros >= 1000)
+			return micros / 1000 + " ms";
+		return micros + " us";
+	}
+}
@@ -0,0 +1,417 @@
+package tournament;
+
+import ai.AI;
+import ai.BitBoard;
+import ai.Player;
+import engine.Move;
+
+import java.lang.reflect.Constructor;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Plays two bots against each other without the GUI, many games at once.
+ *
+ * Games come in pairs: each pair starts from the same random opening and the
+ * bots swap colors for the second game, so neither gets the better openings
+ * or the first move more often. New bots are made for every game since some
+ * of them remember things between moves.
+ *
+ * Results are given from the first bot's point of view, as wins, draws and
+ * losses and as an Elo difference with a 95% confidence interval. A sequential
+ * probability ratio test can stop the run early once the games are enough to
+ * tell whether the first bot is at least elo1 better (accept) or no better
+ * than elo0 (reject).
+ *
+ * Usage: java tournament.Tournament botA botB [--games n] [--threads n]
+ *        [--plies n] [--sprt elo0:elo1] [--seed n]
+ *
+ * where the bots are class names from the ai package, like HardBot.
+ */
+public class Tournament {
+
+	public static final int DEFAULT_GAMES = 1000;
+	public static final int DEFAULT_OPENING_PLIES = 2;
+
+	private static final double SPRT_ALPHA = 0.05; //Chance of accepting when the first bot is no better than elo0
+	private static final double SPRT_BETA = 0.05; //Chance of rejecting when the first bot is elo1 better
+	private static final int REPORT_EVERY = 100; //Games between progress lines
+
+	private final String nameA, nameB;
+	private final IntFunction<AI> botA, botB; //Make a bot for the given player number
+	private final int games;
+	private final int threads;
+	private final int openingPlies;
+	private final long seed;
+
+	private final LatencyHistogram latencyA = new LatencyHistogram();
+	private final LatencyHistogram latencyB = new LatencyHistogram();
+
+	private int wins, draws, losses; //For the first bot
+	private int illegal; //Games lost by playing a full or missing column, or by throwing
+	private boolean sprt = false;
+	private double elo0, elo1;
+	private double llr = 0; //Log likelihood ratio of the test
+	private String verdict = null; //Set once the test has stopped the run
+	private volatile boolean stopped = false;
+	private long startTime, endTime;
+
+	/**
+	 * @param nameA name of the first bot in the report
+	 * @param botA makes the first bot for a player number
+	 * @param nameB name of the second bot in the report
+	 * @param botB makes the second bot for a player number
+	 * @param games number of games to play, rounded up to an even number
+	 * @param threads number of games played at once
+	 * @param openingPlies random moves played before the bots take over
+	 * @param seed seed for the random openings
+	 */
+	public Tournament(String nameA, IntFunction<AI> botA, String nameB, IntFunction<AI> botB,
+			int games, int threads, int openingPlies, long seed) {
+		this.nameA = nameA;
+		this.botA = botA;
+		this.nameB = nameB;
+		this.botB = botB;
+		this.games = games + games % 2;
+		this.threads = Math.max(1, threads);
+		this.openingPlies = Math.max(0, openingPlies);
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.out.println("Usage: java tournament.Tournament botA botB [--games n] [--threads n] "
+					+ "[--plies n] [--sprt elo0:elo1] [--seed n]");
+			return;
+		}
+
+		int games = DEFAULT_GAMES;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int plies = DEFAULT_OPENING_PLIES;
+		long seed = System.nanoTime();
+		String sprt = null;
+
+		for(int i = 2; i + 1 < args.length; i += 2) {
+			switch(args[i]) {
+				case "--games": games = Integer.parseInt(args[i + 1]); break;
+				case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+				case "--plies": plies = Integer.parseInt(args[i + 1]); break;
+				case "--seed": seed = Long.parseLong(args[i + 1]); break;
+				case "--sprt": sprt = args[i + 1]; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		Tournament t = new Tournament(args[0], botFactory(args[0]), args[1], botFactory(args[1]),
+				games, threads, plies, seed);
+		if(sprt != null) {
+			String[] bounds = sprt.split(":");
+			t.setSprt(Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1]));
+		}
+
+		t.run();
+		System.out.print(t.report());
+	}
+
+	/**
+	 * Returns a factory for a bot in the ai package, made with its constructor
+	 * that takes only the player number
+	 *
+	 * @param className the bot's class name, like HardBot
+	 */
+	public static IntFunction<AI> botFactory(String className) throws ReflectiveOperationException {
+		Class<?> c = Class.forName("ai." + className);
+		if(!AI.class.isAssignableFrom(c))
+			throw new IllegalArgumentException(className + " is not an AI");
+
+		Constructor<?> constructor = c.getConstructor(int.class);
+		return player -> {
+			try {
+				return (AI) constructor.newInstance(player);
+			} catch(ReflectiveOperationException e) {
+				throw new IllegalStateException("Could not make " + className, e);
+			}
+		};
+	}
+
+	/**
+	 * Stops the run early once it is clear whether the first bot is better by at
+	 * least elo1 or by no more than elo0
+	 */
+	public void setSprt(double elo0, double elo1) {
+		this.sprt = true;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+	}
+
+	/**
+	 * Plays the games, returning once they are all done or the test has stopped the run
+	 */
+	public void run() throws InterruptedException {
+		AtomicInteger next = new AtomicInteger();
+		startTime = System.nanoTime();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for(int t = 0; t < threads; t++) {
+			pool.execute(() -> {
+				for(int i = next.getAndIncrement(); i < games && !stopped; i = next.getAndIncrement())
+					record(play(i));
+			});
+		}
+
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		endTime = System.nanoTime();
+	}
+
+	/*
+	 * Plays one game and returns the first bot's result: 1 for a win, 0 for a
+	 * draw and -1 for a loss. The first bot moves first in even games
+	 */
+	private int play(int game) {
+		boolean aFirst = game % 2 == 0;
+		AI first = aFirst ? botA.apply(1) : botB.apply(1);
+		AI second = aFirst ? botB.apply(2) : botA.apply(2);
+		LatencyHistogram firstLatency = aFirst ? latencyA : latencyB;
+		LatencyHistogram secondLatency = aFirst ? latencyB : latencyA;
+
+		int[][] grid = new int[BitBoard.ROWS][BitBoard.COLS]; //Row 0 at the top, as the engine keeps it
+		BitBoard board = new BitBoard();
+		Move lastMove = null;
+
+		//Both games of a pair get the same opening
+		Random random = new Random(seed + game / 2);
+		for(int i = 0; i < openingPlies; i++) {
+			int col = random.nextInt(BitBoard.COLS);
+			if(!board.canPlay(col) || board.isWinningMove(col))
+				continue;
+			drop(grid, board, col);
+			lastMove = new Move(col);
+		}
+
+		int winner = 0;
+		try {
+			while(!board.isFull()) {
+				boolean firstToMove = board.getPlayer() == 1;
+				AI bot = firstToMove ? first : second;
+
+				long start = System.nanoTime();
+				int col;
+				try {
+					col = bot.move(copy(grid), lastMove);
+				} catch(RuntimeException e) {
+					e.printStackTrace();
+					col = -1;
+				}
+				(firstToMove ? firstLatency : secondLatency).record(System.nanoTime() - start);
+
+				if(col < 0 || col >= BitBoard.COLS || !board.canPlay(col)) {
+					synchronized(this) {
+						illegal++;
+					}
+					winner = firstToMove ? 2 : 1;
+					break;
+				}
+
+				boolean won = board.isWinningMove(col);
+				drop(grid, board, col);
+				lastMove = new Move(col);
+
+				if(won) {
+					winner = firstToMove ? 1 : 2;
+					break;
+				}
+			}
+		} finally {
+			((Player) first).leaveGame();
+			((Player) second).leaveGame();
+		}
+
+		if(winner == 0)
+			return 0;
+		return (winner == 1) == aFirst ? 1 : -1;
+	}
+
+	/*
+	 * Plays a column on both boards
+	 */
+	private static void drop(int[][] grid, BitBoard board, int col) {
+		grid[BitBoard.ROWS - 1 - board.getHeight(col)][col] = board.getPlayer();
+		board.play(col);
+	}
+
+	/*
+	 * Copies the board so a bot cannot change the real one
+	 */
+	private static int[][] copy(int[][] grid) {
+		int[][] c = new int[grid.length][];
+		for(int i = 0; i < grid.length; i++)
+			c[i] = grid[i].clone();
+		return c;
+	}
+
+	/*
+	 * Counts a finished game, updates the test and prints progress
+	 */
+	private synchronized void record(int result) {
+		if(verdict != null)
+			return;
+
+		if(result > 0)
+			wins++;
+		else if(result < 0)
+			losses++;
+		else
+			draws++;
+
+		int played = getGames();
+		if(played % REPORT_EVERY == 0)
+			System.out.println(String.format("%d games  +%d =%d -%d  %s", played, wins, draws, losses, eloText()));
+
+		if(sprt) {
+			llr = logLikelihoodRatio();
+			if(llr >= Math.log((1 - SPRT_BETA) / SPRT_ALPHA))
+				verdict = "H1 accepted (" + nameA + " is at least " + elo1 + " Elo better)";
+			else if(llr <= Math.log(SPRT_BETA / (1 - SPRT_ALPHA)))
+				verdict = "H0 accepted (" + nameA + " is not more than " + elo0 + " Elo better)";
+
+			if(verdict != null)
+				stopped = true;
+		}
+	}
+
+	/*
+	 * The log likelihood ratio of elo1 against elo0, using the normal
+	 * approximation with the variance of the games so far
+	 */
+	private double logLikelihoodRatio() {
+		int n = getGames();
+		if(n < 2)
+			return 0;
+
+		double score = getScore();
+		double variance = variance(score);
+
+		double s0 = expectedScore(elo0), s1 = expectedScore(elo1);
+		return (s1 - s0) * (2 * score - s0 - s1) * n / (2 * variance);
+	}
+
+	/*
+	 * The variance of one game's score around the mean. Half a game is added to
+	 * each result so a one-sided run, like all wins, does not have a variance of 0
+	 */
+	private double variance(double score) {
+		double w = wins + 0.5, d = draws + 0.5, l = losses + 0.5;
+		double n = w + d + l;
+		return (w * (1 - score) * (1 - score) + d * (0.5 - score) * (0.5 - score) + l * score * score) / n;
+	}
+
+	/*
+	 * The score expected from an Elo difference
+	 */
+	private static double expectedScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/*
+	 * The Elo difference that gives a score, capped for scores of 0 and 1
+	 */
+	private static double elo(double score) {
+		score = Math.max(1e-6, Math.min(1 - 1e-6, score));
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	/*
+	 * The Elo difference with its 95% interval, as text
+	 */
+	private String eloText() {
+		int n = getGames();
+		if(n == 0)
+			return "Elo n/a";
+
+		double score = getScore();
+		double margin = 1.96 * Math.sqrt(variance(score) / n);
+		double low = elo(score - margin), high = elo(score + margin);
+		return String.format("Elo %+.1f [%+.1f, %+.1f]", elo(score), low, high);
+	}
+
+	/**
+	 * Returns the number of games counted
+	 */
+	public synchronized int getGames() {
+		return wins + draws + losses;
+	}
+
+	/**
+	 * Returns the first bot's average points per game, counting a draw as half
+	 */
+	public synchronized double getScore() {
+		int n = getGames();
+		return n == 0 ? 0.5 : (wins + draws / 2.0) / n;
+	}
+
+	/**
+	 * Returns the Elo difference between the bots, positive when the first one is stronger
+	 */
+	public synchronized double getElo() {
+		return elo(getScore());
+	}
+
+	/**
+	 * Returns the result of the test, null if it did not stop the run
+	 */
+	public synchronized String getVerdict() {
+		return verdict;
+	}
+
+	/**
+	 * Returns the move times of the first bot
+	 */
+	public LatencyHistogram getLatencyA() {
+		return latencyA;
+	}
+
+	/**
+	 * Returns the move times of the second bot
+	 */
+	public LatencyHistogram getLatencyB() {
+		return latencyB;
+	}
+
+	/**
+	 * Returns everything measured by the run as text
+	 */
+	public synchronized String report() {
+		double seconds = (endTime - startTime) / 1e9;
+		int n = getGames();
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(String.format("%s vs %s: %d games on %d threads in %.1f s (%.2f games/s)%n",
+				nameA, nameB, n, threads, seconds, seconds == 0 ? 0 : n / seconds));
+		sb.append(String.format("  %s: +%d =%d -%d  score %.3f  %s%n", nameA, wins, draws, losses, getScore(), eloText()));
+		if(illegal > 0)
+			sb.append(String.format("  %d games lost to illegal moves or errors%n", illegal));
+		if(sprt)
+			sb.append(String.format("  SPRT elo0=%.1f elo1=%.1f  LLR %.2f [%.2f, %.2f]  %s%n", elo0, elo1, llr,
+					Math.log(SPRT_BETA / (1 - SPRT_ALPHA)), Math.log((1 - SPRT_BETA) / SPRT_ALPHA),
+					verdict == null ? "no result yet" : verdict));
+
+		appendLatency(sb, nameA, latencyA);
+		appendLatency(sb, nameB, latencyB);
+		return sb.toString();
+	}
+
+	/*
+	 * Adds one bot's move times to the report
+	 */
+	private static void appendLatency(StringBuilder sb, String name, LatencyHistogram latency) {
+		sb.append(String.format("  %s move time: %d moves, mean %.2f ms, p50 <= %.2f ms, p99 <= %.2f ms, max %.2f ms%n",
+				name, latency.getCount(), latency.getMeanMillis(), latency.getPercentileMillis(0.5),
+				latency.getPercentileMillis(0.99), latency.getMaxMillis()));
+		sb.append(latency.format());
+	}
+}